@@ -0,0 +1,94 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how BatchEvaluator scales with threads, in scripts per second.
+    * SCRIPTS script files of 20 to 200 lines are written to a temporary directory once, so after the first run they are read from the page cache
+    * Output is discarded, but still collected per script and written in order, as it is on the command line
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchEvaluatorBenchmark {
+
+    private static final int SCRIPTS = 2000;
+    private static final String[] LINES = {
+            "1 2 3 4 5 6 7 8 9 10 + + + + + + + + + =", "d", "r r r * * =", "# a comment # 100 7 % =", "2 3 ^=", "+ + + + =",
+            "10 3 /", "-4 *", "=", "17 5 %", "3 4 ^ 2 ^ =", "r d"};
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Path directory;
+    private List<Path> scripts;
+    private ForkJoinPool pool;
+    private BatchEvaluator evaluator;
+    private PrintStream errors;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("srpn-batch");
+        scripts = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < SCRIPTS; i++) {
+            StringBuilder script = new StringBuilder();
+            int lines = 20 + random.nextInt(181);
+            for (int line = 0; line < lines; line++) {
+                script.append(LINES[random.nextInt(LINES.length)]).append('\n');
+            }
+            Path file = directory.resolve(String.format("%05d.srpn", i));
+            Files.writeString(file, script, StandardCharsets.US_ASCII);
+            scripts.add(file);
+        }
+        pool = new ForkJoinPool(threads);
+        evaluator = new BatchEvaluator(pool, Charset.defaultCharset(), StandardCharsets.US_ASCII);
+        errors = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCRIPTS)
+    public int run() throws IOException {
+        return evaluator.run(scripts, OutputStream.nullOutputStream(), errors);
+    }
+}
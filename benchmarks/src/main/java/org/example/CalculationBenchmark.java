@@ -0,0 +1,78 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks Operator.apply against the original performCalculation (LegacyCalculation) for each operator, on ordinary operands and on operands that saturate.
+    * nearMax and nearMin pick operands whose result passes Integer.MAX_VALUE / Integer.MIN_VALUE for that operator,
+      including the odd cases srpn has, e.g. MIN_VALUE / -1 and % with MAX_VALUE
+    * The operands are read from fields so the JIT cannot fold the calculation into a constant
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculationBenchmark {
+
+    @Param({"+", "-", "*", "/", "%", "^"})
+    public String operator;
+
+    @Param({"ordinary", "nearMax", "nearMin"})
+    public String operands;
+
+    private char op;
+    private Operator engine;
+    private int valueA;
+    private int valueB;
+
+    @Setup
+    public void setUp() {
+        op = operator.charAt(0);
+        engine = Operator.of(op);
+        int[] pair = switch (operands) {
+            case "nearMax" -> switch (op) {
+                case '+' -> new int[]{Integer.MAX_VALUE - 1, 2};
+                case '-' -> new int[]{Integer.MAX_VALUE - 1, -2};
+                case '*' -> new int[]{Integer.MAX_VALUE / 2 + 1, 2};
+                case '/' -> new int[]{Integer.MIN_VALUE, -1};
+                case '%' -> new int[]{Integer.MAX_VALUE, 7};
+                default -> new int[]{2, 31};
+            };
+            case "nearMin" -> switch (op) {
+                case '+' -> new int[]{Integer.MIN_VALUE + 1, -2};
+                case '-' -> new int[]{Integer.MIN_VALUE + 1, 2};
+                case '*' -> new int[]{Integer.MIN_VALUE / 2 - 1, 2};
+                case '/' -> new int[]{Integer.MIN_VALUE, 3};
+                case '%' -> new int[]{Integer.MIN_VALUE, 7};
+                default -> new int[]{-2, 33};
+            };
+            default -> op == '^' ? new int[]{3, 7} : new int[]{123456, 789};
+        };
+        valueA = pair[0];
+        valueB = pair[1];
+    }
+
+    @Benchmark
+    public int legacy() {
+        return LegacyCalculation.performCalculation(valueA, valueB, op);
+    }
+
+    @Benchmark
+    public int operator() {
+        return engine.apply(valueA, valueB);
+    }
+}
@@ -0,0 +1,61 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the two ways of rebuilding a session that has processed commands lines: replaying them all, or restoring a Checkpoint.
+    * replay grows with commands, while restore (decoding the checkpoint's bytes and building the SRPN) should not
+    * The session keeps a 64-token history, so restoring also rebuilds a full history window
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckpointBenchmark {
+
+    private static final int HISTORY_CAPACITY = 64;
+    private static final String[] LINES = {"1 2 3 4 5 6 7 8 9 10", "r r *", "+ + + + + + + + + +", "d"};
+
+    @Param({"1000", "100000"})
+    public int commands;
+
+    private OutputSink sink;
+    private ByteBuffer checkpoint;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        sink = new DiscardSink(blackhole);
+        checkpoint = replay().checkpoint(commands).encode();
+    }
+
+    @Benchmark
+    public SRPN replay() throws IOException {
+        SRPN srpn = new SRPN(sink, HISTORY_CAPACITY, ProgramCache.DEFAULT_CAPACITY);
+        for (int i = 0; i < commands; i++) {
+            srpn.processCommand(LINES[i % LINES.length]);
+        }
+        return srpn;
+    }
+
+    @Benchmark
+    public SRPN restore() throws IOException {
+        return Checkpoint.decode(checkpoint.duplicate()).restore(sink, ProgramCache.DEFAULT_CAPACITY, null);
+    }
+}
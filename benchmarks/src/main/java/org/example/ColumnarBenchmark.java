@@ -0,0 +1,82 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures rows/s for one formula applied to ROWS rows of 3 columns: ColumnarFormula against the row-at-a-time baseline.
+    * rowAtATime is how it is done without columnar mode - one processCommand call per row, in a new session, with the row's values written into the line
+        * The lines are built in setUp, so formatting them is not counted against the baseline
+    * The first formula only uses + - *, so no row is evaluated on its own; the second divides by a column that is 0 in about 1 row in 16, and those rows are evaluated on their own
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnarBenchmark {
+
+    private static final int ROWS = 1 << 16;
+
+    @Param({"$0 $1 + $2 * $0 -", "$0 $1 * $2 / $1 +"})
+    public String formula;
+
+    private ColumnarFormula columnar;
+    private int[][] columns;
+    private int[] results;
+    private int[] outcomes;
+    private String[] lines;
+    private OutputSink sink;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        columnar = ColumnarFormula.compile(formula);
+        SplittableRandom random = new SplittableRandom(3);
+        columns = new int[3][ROWS];
+        for (int[] column : columns) {
+            for (int row = 0; row < ROWS; row++) {
+                column[row] = random.nextInt(16) == 0 ? 0 : random.nextInt(-100_000, 100_000);
+            }
+        }
+        results = new int[ROWS];
+        outcomes = new int[ROWS];
+        lines = new String[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            lines[row] = formula.replace("$0", Integer.toString(columns[0][row]))
+                    .replace("$1", Integer.toString(columns[1][row]))
+                    .replace("$2", Integer.toString(columns[2][row])) + " =";
+        }
+        sink = new DiscardSink(blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int[] columnar() {
+        columnar.evaluate(columns, results, outcomes);
+        return results;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void rowAtATime() throws IOException {
+        for (String line : lines) {
+            new SRPN(sink, 0, 0).processCommand(line);
+        }
+    }
+}
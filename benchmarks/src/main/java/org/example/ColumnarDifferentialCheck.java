@@ -0,0 +1,126 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * ColumnarDifferentialCheck compares ColumnarFormula with per-row evaluation - a new SRPN session per row, given the formula with the row's
+   values in place of $n followed by '=' - and fails if a single row's result or outcome differs.
+    * FORMULAS random formulas of up to 40 tokens: columns, literals and every operator, so rows underflow, overflow and leave the stack empty
+    * Each is applied to ROWS rows drawn from values around 0, ±1, the int limits and small numbers, so every error and saturation case comes up
+ * Run after building the benchmarks module:
+ *     java -cp benchmarks/target/benchmarks.jar org.example.ColumnarDifferentialCheck
+ */
+public final class ColumnarDifferentialCheck {
+
+    private static final int FORMULAS = 2_000;
+    private static final int ROWS = 2_500; // more than two batches, so a partial batch is covered too
+    private static final int COLUMNS = 3;
+    private static final int[] VALUES = {0, 1, -1, 2, -2, 3, 7, -7, 31, 32, 46341, -46341, 65536,
+            Integer.MAX_VALUE, Integer.MAX_VALUE - 1, Integer.MIN_VALUE, Integer.MIN_VALUE + 1};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "^"};
+
+    public static void main(String[] args) throws IOException {
+        SplittableRandom random = new SplittableRandom(13);
+        long compared = 0;
+        long mismatches = 0;
+        long withErrors = 0;
+        for (int f = 0; f < FORMULAS; f++) {
+            String formula = randomFormula(random);
+            ColumnarFormula columnar = ColumnarFormula.compile(formula);
+            int[][] columns = new int[COLUMNS][ROWS];
+            for (int[] column : columns) {
+                for (int row = 0; row < ROWS; row++) {
+                    column[row] = random.nextInt(4) == 0 ? random.nextInt() : VALUES[random.nextInt(VALUES.length)];
+                }
+            }
+            int[] results = new int[ROWS];
+            int[] outcomes = new int[ROWS];
+            columnar.evaluate(columns, results, outcomes);
+            for (int row = 0; row < ROWS; row++) {
+                compared++;
+                Capture expected = perRow(formula, columns, row);
+                withErrors += outcomes[row] != 0 ? 1 : 0;
+                if (expected.result != results[row] || expected.outcome != outcomes[row]) {
+                    if (++mismatches <= 20) {
+                        System.out.printf("Mismatch for \"%s\" row %d: expected %d [%s], got %d [%s]%n", formula, row,
+                                expected.result, ColumnarFormula.describe(expected.outcome), results[row], ColumnarFormula.describe(outcomes[row]));
+                    }
+                }
+            }
+        }
+        System.out.printf("%d formulas, %d rows (%d with errors), %d mismatches%n", FORMULAS, compared, withErrors, mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String randomFormula(SplittableRandom random) {
+        StringBuilder formula = new StringBuilder();
+        int tokens = 1 + random.nextInt(random.nextInt(4) == 0 ? 40 : 12);
+        for (int i = 0; i < tokens; i++) {
+            int kind = random.nextInt(10);
+            String token = kind < 4 ? "$" + random.nextInt(COLUMNS)
+                    : kind < 5 ? Integer.toString(VALUES[random.nextInt(VALUES.length)])
+                    : OPERATORS[random.nextInt(OPERATORS.length)];
+            formula.append(i == 0 ? "" : " ").append(token);
+        }
+        return formula.toString();
+    }
+
+    /**
+     * perRow evaluates one row the way a user would: a new session, given the formula with the row's values written in, then '='.
+     */
+    private static Capture perRow(String formula, int[][] columns, int row) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (String token : formula.split(" ")) {
+            line.append(token.charAt(0) == '$' ? Integer.toString(columns[token.charAt(1) - '0'][row]) : token).append(' ');
+        }
+        line.append('=');
+        Capture capture = new Capture();
+        SRPN srpn = new SRPN(capture, 0, 0);
+        try {
+            srpn.processCommand(line);
+        } catch (ArithmeticException e) {
+            capture.outcome |= ColumnarFormula.FAILED;
+        }
+        if (!capture.printed) {
+            capture.outcome |= ColumnarFormula.NO_VALUE;
+        }
+        return capture;
+    }
+
+    /**
+     * Capture keeps what a session printed as a ColumnarFormula result and outcome.
+     */
+    private static final class Capture implements OutputSink {
+        int result;
+        int outcome;
+        boolean printed;
+
+        @Override
+        public void value(int value) {
+            result = value;
+            printed = true;
+        }
+
+        @Override
+        public void echo(char c) {
+            throw new AssertionError("Formulas never use ^=");
+        }
+
+        @Override
+        public void diagnostic(Diagnostic diagnostic) {
+            outcome |= ColumnarFormula.bit(diagnostic);
+        }
+
+        @Override
+        public void unrecognised(CharSequence token) {
+            outcome |= ColumnarFormula.UNRECOGNISED;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
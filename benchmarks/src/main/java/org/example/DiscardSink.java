@@ -0,0 +1,40 @@
+package org.example;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * DiscardSink drops everything a SRPN session prints, so benchmarks measure the calculator rather than stdout.
+    * Each value is still handed to the Blackhole, so the JIT cannot optimise the work that produced it away
+ */
+final class DiscardSink implements OutputSink {
+
+    private final Blackhole blackhole;
+
+    DiscardSink(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void value(int value) {
+        blackhole.consume(value);
+    }
+
+    @Override
+    public void echo(char c) {
+        blackhole.consume(c);
+    }
+
+    @Override
+    public void diagnostic(Diagnostic diagnostic) {
+        blackhole.consume(diagnostic);
+    }
+
+    @Override
+    public void unrecognised(CharSequence token) {
+        blackhole.consume(token);
+    }
+
+    @Override
+    public void flush() {
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading a line's answers back in-process: through Evaluator, against printing them to a stream and parsing the text again.
+    * Each line prints two values and a diagnostic, and leaves the stack as it found it
+    * Run with -prof gc (as the benchmarks module does) to see that evaluator allocates nothing per line
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    private static final String LINE = "3 4 * = 5 0 / + = * 0 * +";
+
+    private Evaluator evaluator;
+    private SRPN printing;
+    private ByteArrayOutputStream printed;
+
+    @Setup
+    public void setUp() throws IOException {
+        evaluator = new Evaluator();
+        evaluator.evaluate("1");
+        printed = new ByteArrayOutputStream();
+        printing = new SRPN(new PrintStreamSink(new PrintStream(printed, false, StandardCharsets.UTF_8)));
+        printing.processCommand("1");
+    }
+
+    @Benchmark
+    public long evaluator() {
+        EvaluationResult result = evaluator.evaluate(LINE);
+        long sum = 0;
+        for (int i = 0; i < result.size(); i++) {
+            sum += result.kind(i) == EvaluationResult.VALUE ? result.value(i) : -1;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long stdoutCapture() throws IOException {
+        printed.reset();
+        printing.processCommand(LINE);
+        long sum = 0;
+        for (String line : printed.toString(StandardCharsets.UTF_8).split(System.lineSeparator())) {
+            sum += !line.isEmpty() && (Character.isDigit(line.charAt(0)) || line.charAt(0) == '-') ? Integer.parseInt(line) : -1;
+        }
+        return sum;
+    }
+}
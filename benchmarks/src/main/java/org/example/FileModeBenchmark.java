@@ -0,0 +1,71 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures --file mode per line: a script of LINES lines read through MappedLineReader into an Evaluator, as Main does.
+    * distinct is a script in which no line is repeated - so none is worth caching - and repeated cycles through 16 lines
+    * Each invocation runs the file in a fresh session, as Main does - a session kept across invocations would fill its stack
+    * Run with -prof gc (as the benchmarks module does): gc.alloc.rate.norm is the bytes allocated per line
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileModeBenchmark {
+
+    private static final int LINES = 100_000;
+
+    @Param({"distinct", "repeated"})
+    public String script;
+
+    private Path file;
+    private MappedLineReader reader;
+    private OutputSink output;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder text = new StringBuilder("0\n");
+        for (int i = 1; i < LINES; i++) {
+            int n = script.equals("distinct") ? i : i % 16;
+            text.append(n).append(' ').append(n * 7 + 3).append(" + = -\n"); // prints a sum and leaves one value on the stack
+        }
+        file = Files.createTempFile("srpn-file-mode", ".txt");
+        Files.writeString(file, text, StandardCharsets.US_ASCII);
+        reader = new MappedLineReader(StandardCharsets.US_ASCII, MappedLineReader.SEGMENT_SIZE);
+        output = new BufferedSink(OutputStream.nullOutputStream(), StandardCharsets.US_ASCII, BufferedSink.DEFAULT_THRESHOLD);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long file() throws IOException {
+        Evaluator evaluator = new Evaluator();
+        return reader.read(file, line -> evaluator.evaluate(line).writeTo(output));
+    }
+}
@@ -0,0 +1,74 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures trying BRANCHES alternative continuations from one prepared session: forking it, against rebuilding it by replaying its input.
+    * The prepared session has 20 values on the stack, has drawn 30 'r' values, and keeps a full history of HISTORY lines
+    * fork creates all BRANCHES forks and keeps them, so the time and gc.alloc.rate.norm per op are the cost of holding one branch
+    * forkAndEvaluate and replayAndEvaluate each also run a branch line, which is where a fork first copies the stack
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForkBenchmark {
+
+    private static final int BRANCHES = 100_000;
+    private static final int HISTORY = 1_000;
+    private static final String[] BRANCH_LINES = {"+ =", "* =", "- d", "r r + ="};
+
+    private final Evaluator[] branches = new Evaluator[BRANCHES];
+    private String[] input;
+    private Evaluator prepared;
+
+    @Setup
+    public void setUp() {
+        input = new String[HISTORY];
+        for (int i = 0; i < HISTORY; i++) {
+            input[i] = i < 20 ? Integer.toString(i * 7 + 1) : i < 50 ? "r" : "#" + i + "#"; // the 'r' values overflow the stack, so are only drawn
+        }
+        prepared = new Evaluator(HISTORY, ProgramCache.DEFAULT_CAPACITY, null);
+        prepared.evaluate(input, 0, HISTORY);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BRANCHES)
+    public Evaluator[] fork() {
+        for (int i = 0; i < BRANCHES; i++) {
+            branches[i] = prepared.fork();
+        }
+        return branches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BRANCHES)
+    public long forkAndEvaluate() {
+        long sum = 0;
+        for (int i = 0; i < BRANCHES; i++) {
+            sum += prepared.fork().evaluate(BRANCH_LINES[i & 3]).lastValue(0);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long replayAndEvaluate() {
+        Evaluator branch = new Evaluator(HISTORY, ProgramCache.DEFAULT_CAPACITY, null);
+        branch.evaluate(input, 0, HISTORY);
+        return branch.evaluate(BRANCH_LINES[0]).lastValue(0);
+    }
+}
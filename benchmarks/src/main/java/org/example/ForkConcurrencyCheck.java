@@ -0,0 +1,117 @@
+package org.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ForkConcurrencyCheck runs BRANCHES forks of one session on THREADS threads at once, and fails if any branch prints something different
+   from a session that replayed the same input from the start, or if the session they were forked from changes.
+    * Every branch runs its own random script of up to 40 lines, so branches push, pop, overflow and draw 'r' values over one shared stack
+    * It also fails if forking, or forking and running one line, allocates more than MAX_FORK_BYTES or MAX_BRANCH_BYTES per branch - a fork
+      must not copy the session's state, nor start with a cache sized for the session it was forked from
+ * Run after building the benchmarks module:
+ *     java -cp benchmarks/target/benchmarks.jar org.example.ForkConcurrencyCheck
+ */
+public final class ForkConcurrencyCheck {
+
+    private static final int BRANCHES = 20_000;
+    private static final int THREADS = 8;
+    private static final long MAX_FORK_BYTES = 1_536; // about 800 today: the fork's objects and an empty cache
+    private static final long MAX_BRANCH_BYTES = 4_096; // about 1,900 today: also the first writes' copies of the stack and history, and what compiling a line needs
+    private static final String[] TOKENS = {"1", "-3", "17", "2147483647", "+", "-", "*", "/", "r", "d", "=", "#x#"};
+
+    public static void main(String[] args) throws Exception {
+        String[] prefix = new String[40];
+        for (int i = 0; i < prefix.length; i++) {
+            prefix[i] = i % 3 == 2 ? "r" : Integer.toString(i * 11 - 50);
+        }
+        Evaluator root = new Evaluator(64, ProgramCache.DEFAULT_CAPACITY, null);
+        root.evaluate(prefix, 0, prefix.length);
+        String before = print(root.fork().evaluate("d"));
+
+        SplittableRandom random = new SplittableRandom(5);
+        String[][] scripts = new String[BRANCHES][];
+        Evaluator[] branches = new Evaluator[BRANCHES];
+        for (int b = 0; b < BRANCHES; b++) {
+            scripts[b] = randomScript(random);
+            branches[b] = root.fork(); // fork on the root's own thread, as SRPN.fork requires
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int first = t;
+            futures.add(pool.submit(() -> {
+                long mismatches = 0;
+                for (int b = first; b < BRANCHES; b += THREADS) {
+                    Evaluator replayed = new Evaluator(64, ProgramCache.DEFAULT_CAPACITY, null);
+                    replayed.evaluate(prefix, 0, prefix.length);
+                    for (String line : scripts[b]) {
+                        if (!print(branches[b].evaluate(line)).equals(print(replayed.evaluate(line)))) {
+                            mismatches++;
+                        }
+                    }
+                }
+                return mismatches;
+            }));
+        }
+        long mismatches = 0;
+        for (Future<Long> future : futures) {
+            mismatches += future.get();
+        }
+        pool.shutdown();
+
+        long forkBytes = allocatedPerBranch(root, null);
+        long branchBytes = allocatedPerBranch(root, "1 +");
+
+        boolean rootUnchanged = before.equals(print(root.fork().evaluate("d")));
+        System.out.println(BRANCHES + " branches on " + THREADS + " threads, " + mismatches + " mismatched lines, root "
+                + (rootUnchanged ? "unchanged" : "CHANGED") + ", " + forkBytes + " B per fork, " + branchBytes + " B per fork and line");
+        if (mismatches > 0 || !rootUnchanged || forkBytes > MAX_FORK_BYTES || branchBytes > MAX_BRANCH_BYTES) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the bytes this thread allocates per fork of root, kept as ForkBenchmark keeps them, and per run of line on the fork if it is not null.
+        * Measured after warm-up rounds, so that the JIT has compiled the path and allocations it can remove are not counted
+     */
+    private static long allocatedPerBranch(Evaluator root, String line) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Evaluator[] kept = new Evaluator[BRANCHES];
+        long bytes = 0;
+        for (int round = 0; round < 5; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int b = 0; b < BRANCHES; b++) {
+                kept[b] = root.fork();
+                if (line != null) {
+                    kept[b].evaluate(line);
+                }
+            }
+            bytes = (threads.getCurrentThreadAllocatedBytes() - before) / BRANCHES;
+        }
+        return bytes;
+    }
+
+    private static String[] randomScript(SplittableRandom random) {
+        String[] script = new String[1 + random.nextInt(40)];
+        for (int i = 0; i < script.length; i++) {
+            script[i] = TOKENS[random.nextInt(TOKENS.length)];
+        }
+        return script;
+    }
+
+    private static String print(EvaluationResult result) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < result.size(); i++) {
+            text.append(result.kind(i)).append(':').append(result.kind(i) == EvaluationResult.UNRECOGNISED
+                    ? result.token(i) : Integer.toString(result.value(i))).append(' ');
+        }
+        return text.append(result.failure() == null ? "" : result.failure().getClass().getSimpleName()).toString();
+    }
+}
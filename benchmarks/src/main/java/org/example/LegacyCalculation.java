@@ -0,0 +1,81 @@
+package org.example;
+
+/**
+ * LegacyCalculation is SRPN's original performCalculation, kept unchanged as the reference Operator is checked and benchmarked against.
+    * It works out both overflow checks for every operator before it switches - with up to three Math.pow calls for '^'
+    * Not used by the calculator itself - see Operator
+ */
+final class LegacyCalculation {
+
+    private LegacyCalculation() {
+    }
+
+    /**
+     * performCalculation is the method that handles mathematical operations within the program, using a variety of validations to achieve the correct result.
+        * There are 4 boolean values:
+            * isMax - determines whether either value is equal to the maximum integer value - true if so, false if not.
+            * isMin - same as isMax but for minimum integer value - true if so, false if not.
+            * exceedsMaxValue - determines whether the result of the calculation will exceed the max value before the calculation is actually performed.
+            * exceedsMinValue - similarly to exceedsMaxValue, checks the result against the minimum integer value for specific operators only.
+                * Abstracting this logic into separate methods helps keep the logic readable and clean.
+        * This method also utilises a switch implementation as opposed to using "if-else" statements, which contributes to greater readability whilst providing similar functionality in this case.
+        * Use of ternary operators in the return cases instead of using the verbose "if-else" approach to switch implementation.
+     * @param valueA - the first integer in the equation
+     * @param valueB - the second integer in the equation
+     * @param operator - the mathematical operation to be performed on the two integers
+     * @return the result of the calculation
+     */
+    static int performCalculation(int valueA, int valueB, char operator) {
+        boolean isMax = Integer.MAX_VALUE == valueA || Integer.MAX_VALUE == valueB;
+        boolean isMin = Integer.MIN_VALUE == valueA || Integer.MIN_VALUE == valueB;
+        boolean exceedsMax = exceedsMaxValue(valueA, valueB, operator);
+        boolean exceedsMin = exceedsMinValue(valueA, valueB, operator);
+            return switch (operator) {
+                case '%' -> !isMax && !isMin ? valueA % valueB  // if not max or min values, return the remainder of the operation
+                                : isMax ? Integer.MAX_VALUE : Integer.MIN_VALUE; // if not, return max value if one val = max val, or return min value otherwise
+                case '*' ->  !exceedsMax && !exceedsMin ? valueA * valueB // if the result of the calculation exceeds neither max or min values, return a * b
+                                : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE; // in the case either value exceeds max val / result of both exeeds it, return max value, otherwise return min value
+                case '/' -> !exceedsMax ? valueA / valueB : isMax ? Integer.MAX_VALUE : 0; // min value not possible to be exceeded, so unless it exceeds max value, returns a / b, or 0.
+                case '-' -> !exceedsMax && !exceedsMin ? valueA - valueB // returns result of a - b if neither max or min value are exceeded
+                                : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE; // otherwise, if either val / their result exceeds max, return max int, otherwise return min int val
+                case '^' -> !exceedsMax && !exceedsMin ? (int) Math.pow(valueA, valueB) // uses inbuilt Math.pow() function to calculate a ^ b - cast to an int
+                                : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+                default -> !exceedsMax && !exceedsMin // default value is set to addition, as this is the last remaining case - can't be any other operator because it has already been validated against operator array of vals
+                                ? valueA + valueB : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE; // primary scenario returns a + b if validated
+            };
+    }
+
+    /**
+     * Function designed to take two integers and an operator and return true or false based on whether the result of the calculation exceeds the minimum integer value.
+        * Only takes into account subtraction, addition and multiplication.
+        * Values must be cast to long as the result must be compared to the min value of an integer (-2^31), so must be able to pass this threshold to validate the boolean condition.
+        * Dividing two numbers can never reach below min val, neither can modulus, so these are excluded.
+     */
+    private static boolean exceedsMinValue(int valA, int valB, char operator){
+        return switch (operator) {
+            case '*' -> (long) valA * (long) valB < Integer.MIN_VALUE;
+            case '+' -> (long) valA + (long) valB < Integer.MIN_VALUE;
+            case '-' -> (long) valA - (long) valB < Integer.MIN_VALUE;
+            case '^' -> (long) Math.pow(valA, valB) < Integer.MIN_VALUE; // Utilise the pow() function to process the result
+            default -> false;
+        };
+    }
+
+    /**
+     * Similar to exceedsMinValue, returns true or false based on whether the result of the calculation exceeds Max integer value.
+     * Logic is extracted away from performCalculation to enhance modularisation and delegation of logic flow .
+     * Modulus is excluded as two numbers applied against the modulus operator can never reach max val
+     */
+
+    private static boolean exceedsMaxValue(int valA, int valB, char operator) {
+        // casting each value to long so that the calculation can occur
+        return switch (operator) {
+            case '*' -> (long) valA * (long) valB > Integer.MAX_VALUE;
+            case '/' -> (long) valA / (long) valB > Integer.MAX_VALUE; // dividing two numbers can reach above max val in one case - Min val / -1
+            case '+' -> (long) valA + (long) valB > Integer.MAX_VALUE;
+            case '-' -> (long) valA - (long) valB > Integer.MAX_VALUE;
+            case '^' -> (long) Math.pow(valA, valB) > Integer.MAX_VALUE;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures what recording Metrics costs processCommand, comparing the same lines with metrics off and on.
+    * script is the realistic case: 200 mixed lines - values, operators, comments, errors, '=' and 'd' - printed through a BufferedSink
+    * singleTokens, longLine and errorLine are the worst cases: lines run from cached Programs into a sink that prints nothing,
+      so the fixed cost of recording a line is as large a share of the work as it can be
+    * Run with -prof gc (as the benchmarks module does) to see that recording allocates nothing: gc.alloc.rate.norm is the same either way
+    * off and on run in different forks, so on a noisy machine their difference is within the fork-to-fork noise - MetricsOverheadCheck
+      measures the overhead against a control in one JVM instead
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    private static final String[] SINGLE_TOKENS = {"3", "4", "*", "=", "%"};
+    private static final String LONG_LINE = "1 2 3 4 5 6 7 8 9 10 + + + + + + + + + = %";
+    private static final String ERROR_LINE = "0 / x 2 -1 ^ % + +"; // "Divide by 0.", an unrecognised token and "Negative power."
+
+    private static final String[] SCRIPT_LINES = {
+            LONG_LINE, "3", "4", "*", "=", "%", "d", "r r * =", "# a comment # 100 7 % =", "2 3 ^= %", ERROR_LINE, "17 5 % +", "="};
+
+    @Param({"off", "on"})
+    public String metrics;
+
+    private SRPN srpn;
+    private SRPN scriptSession;
+    private String[] script;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        srpn = new SRPN(new DiscardSink(blackhole), 0, ProgramCache.DEFAULT_CAPACITY, newMetrics());
+        srpn.processCommand("1"); // the value every benchmark works against
+        OutputSink printed = new BufferedSink(OutputStream.nullOutputStream(), StandardCharsets.US_ASCII, BufferedSink.DEFAULT_THRESHOLD);
+        scriptSession = new SRPN(printed, 0, ProgramCache.DEFAULT_CAPACITY, newMetrics());
+        script = new String[200];
+        Random random = new Random(7);
+        for (int i = 0; i < script.length; i++) {
+            script[i] = SCRIPT_LINES[random.nextInt(SCRIPT_LINES.length)];
+        }
+    }
+
+    private Metrics newMetrics() {
+        return metrics.equals("on") ? new MetricsMonitor().newMetrics() : null;
+    }
+
+    @Benchmark
+    public void script() throws IOException {
+        for (String line : script) {
+            scriptSession.processCommand(line);
+        }
+    }
+
+    @Benchmark
+    public void singleTokens() throws IOException {
+        for (String token : SINGLE_TOKENS) {
+            srpn.processCommand(token);
+        }
+    }
+
+    @Benchmark
+    public void longLine() throws IOException {
+        srpn.processCommand(LONG_LINE);
+    }
+
+    @Benchmark
+    public void errorLine() throws IOException {
+        srpn.processCommand(ERROR_LINE);
+    }
+}
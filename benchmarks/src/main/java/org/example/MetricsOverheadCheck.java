@@ -0,0 +1,112 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * MetricsOverheadCheck measures what recording Metrics costs processCommand more precisely than MetricsOverheadBenchmark can on a noisy machine.
+    * MetricsOverheadBenchmark runs metrics off and on in different JVMs, so their difference includes how each fork happened to be compiled
+      and what else the machine was doing at the time - on a small VM two forks of the same code differ by 10% or more
+    * Here a session with metrics and one without run the same lines in one JVM, in alternating rounds, and the overhead is the median of
+      the per-round ratios - so both sides share the compiled code and the machine's noise
+    * A second session without metrics is measured the same way, as a control - its "overhead" is the noise floor of the measurement
+    * The cases are those of MetricsOverheadBenchmark: single tokens, a long line, a line of errors, and a 200-line mixed script
+ * Run after building the benchmarks module:
+ *     java -cp benchmarks/target/benchmarks.jar org.example.MetricsOverheadCheck
+ */
+public final class MetricsOverheadCheck {
+
+    private static final int ROUNDS = 60;
+    private static final long ROUND_NANOS = 20_000_000; // per session per round
+
+    private static final String[] SINGLE_TOKENS = {"3", "4", "*", "=", "%"};
+    private static final String LONG_LINE = "1 2 3 4 5 6 7 8 9 10 + + + + + + + + + = %";
+    private static final String ERROR_LINE = "0 / x 2 -1 ^ % + +";
+    private static final String[] SCRIPT_LINES = {
+            LONG_LINE, "3", "4", "*", "=", "%", "d", "r r * =", "# a comment # 100 7 % =", "2 3 ^= %", ERROR_LINE, "17 5 % +", "="};
+
+    public static void main(String[] args) throws IOException {
+        String[] script = new String[200];
+        Random random = new Random(7);
+        for (int i = 0; i < script.length; i++) {
+            script[i] = SCRIPT_LINES[random.nextInt(SCRIPT_LINES.length)];
+        }
+        String[][] cases = {SINGLE_TOKENS, {LONG_LINE}, {ERROR_LINE}, script};
+        String[] names = {"singleTokens", "longLine", "errorLine", "script"};
+
+        System.out.printf("%-14s %12s %12s %10s %10s%n", "case", "off ns/op", "on ns/op", "overhead", "control");
+        for (int c = 0; c < cases.length; c++) {
+            SRPN off = session(null);
+            SRPN control = session(null);
+            SRPN on = session(new MetricsMonitor().newMetrics());
+            int reps = calibrate(off, cases[c]);
+            measure(off, on, control, cases[c], reps, ROUNDS / 4, null); // warm-up rounds
+            double[] result = new double[4];
+            measure(off, on, control, cases[c], reps, ROUNDS, result);
+            System.out.printf("%-14s %12.1f %12.1f %9.1f%% %9.1f%%%n", names[c], result[0], result[1], result[2], result[3]);
+        }
+    }
+
+    private static SRPN session(Metrics metrics) throws IOException {
+        OutputSink printed = new BufferedSink(OutputStream.nullOutputStream(), StandardCharsets.US_ASCII, BufferedSink.DEFAULT_THRESHOLD);
+        SRPN srpn = new SRPN(printed, 0, ProgramCache.DEFAULT_CAPACITY, metrics);
+        srpn.processCommand("1"); // the value every case works against
+        return srpn;
+    }
+
+    private static int calibrate(SRPN srpn, String[] lines) throws IOException {
+        int reps = 1;
+        while (time(srpn, lines, reps) < ROUND_NANOS) {
+            reps *= 2;
+        }
+        return reps;
+    }
+
+    /**
+     * measure runs rounds of off, on and control in a rotating order, and fills result with the median ns/op of off and on,
+       and the median per-round percentages on/off and control/off.
+     */
+    private static void measure(SRPN off, SRPN on, SRPN control, String[] lines, int reps, int rounds, double[] result) throws IOException {
+        double[] offNanos = new double[rounds];
+        double[] onNanos = new double[rounds];
+        double[] overhead = new double[rounds];
+        double[] noise = new double[rounds];
+        SRPN[] order = {off, on, control};
+        long[] nanos = new long[3];
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < 3; i++) {
+                int session = (round + i) % 3;
+                nanos[session] = time(order[session], lines, reps);
+            }
+            offNanos[round] = (double) nanos[0] / reps;
+            onNanos[round] = (double) nanos[1] / reps;
+            overhead[round] = 100.0 * nanos[1] / nanos[0] - 100;
+            noise[round] = 100.0 * nanos[2] / nanos[0] - 100;
+        }
+        if (result != null) {
+            result[0] = median(offNanos);
+            result[1] = median(onNanos);
+            result[2] = median(overhead);
+            result[3] = median(noise);
+        }
+    }
+
+    private static long time(SRPN srpn, String[] lines, int reps) throws IOException {
+        long start = System.nanoTime();
+        for (int r = 0; r < reps; r++) {
+            for (String line : lines) {
+                srpn.processCommand(line);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
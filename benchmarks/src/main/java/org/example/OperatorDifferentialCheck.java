@@ -0,0 +1,101 @@
+package org.example;
+
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.function.IntSupplier;
+
+/**
+ * OperatorDifferentialCheck compares Operator.apply with the original performCalculation (LegacyCalculation) for every operator,
+   and fails if a single result - or the exception thrown - differs.
+    * Edge grid: every pair drawn from the values around 0, ±1, the int limits, powers of two and the roots of 2^31, in both orders
+    * Powers: every base from -4096 to 4096 against exponents -3 to 66, and the extreme exponents
+    * Random: RANDOM_PAIRS uniformly random pairs per operator
+ * Run after building the benchmarks module:
+ *     java -cp benchmarks/target/benchmarks.jar org.example.OperatorDifferentialCheck
+ */
+public final class OperatorDifferentialCheck {
+
+    private static final int RANDOM_PAIRS = 10_000_000;
+
+    private static long compared;
+    private static long mismatches;
+
+    public static void main(String[] args) {
+        int[] grid = edgeValues();
+        for (Operator operator : Operator.values()) {
+            long before = compared;
+            for (int valueA : grid) {
+                for (int valueB : grid) {
+                    compare(operator, valueA, valueB);
+                }
+            }
+            SplittableRandom random = new SplittableRandom(operator.ordinal());
+            for (int i = 0; i < RANDOM_PAIRS; i++) {
+                compare(operator, random.nextInt(), random.nextInt());
+            }
+            if (operator == Operator.POWER) {
+                int[] exponents = {Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -65, -64, Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+                for (int base = -4096; base <= 4096; base++) {
+                    for (int exponent = -3; exponent <= 66; exponent++) {
+                        compare(operator, base, exponent);
+                    }
+                    for (int exponent : exponents) {
+                        compare(operator, base, exponent);
+                    }
+                }
+            }
+            System.out.printf("%s: %d pairs compared%n", operator.symbol(), compared - before);
+        }
+        System.out.printf("%d grid values, %d pairs, %d mismatches%n", grid.length, compared, mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void compare(Operator operator, int valueA, int valueB) {
+        compared++;
+        String expected = outcome(() -> LegacyCalculation.performCalculation(valueA, valueB, operator.symbol()));
+        String actual = outcome(() -> operator.apply(valueA, valueB));
+        if (!expected.equals(actual)) {
+            if (++mismatches <= 20) {
+                System.out.printf("  %d %s %d: expected %s, got %s%n", valueA, operator.symbol(), valueB, expected, actual);
+            }
+        }
+    }
+
+    private static String outcome(IntSupplier calculation) {
+        try {
+            return Integer.toString(calculation.getAsInt());
+        } catch (ArithmeticException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * edgeValues returns the values each operator is most likely to get wrong, with their negations and neighbours.
+     */
+    private static int[] edgeValues() {
+        TreeSet<Integer> values = new TreeSet<>();
+        long[] seeds = {0, 1, 2, 3, 5, 7, 10, 31, 32, 33, 215, 216, 1290, 1291, 46340, 46341, 65535, 65536,
+                1162261467, Integer.MAX_VALUE / 2, Integer.MAX_VALUE};
+        for (long seed : seeds) {
+            addWithNeighbours(values, seed);
+        }
+        for (int shift = 0; shift <= 31; shift++) {
+            addWithNeighbours(values, 1L << shift);
+        }
+        values.add(Integer.MIN_VALUE);
+        values.add(Integer.MIN_VALUE + 1);
+        return values.stream().mapToInt(Integer::intValue).toArray(); // sorted
+    }
+
+    private static void addWithNeighbours(TreeSet<Integer> values, long value) {
+        for (long near = value - 1; near <= value + 1; near++) {
+            for (long signed : new long[]{near, -near}) {
+                if (signed >= Integer.MIN_VALUE && signed <= Integer.MAX_VALUE) {
+                    values.add((int) signed);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks SRPN.processCommand on the kinds of line it is fed.
+    * Each benchmark leaves the stack as deep as it found it (ending with a '%'), so a long run measures the same work throughout
+      rather than drifting into "Stack overflow."
+    * cacheCapacity 0 measures lexing every line, the default measures runs of an already-compiled Program
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessCommandBenchmark {
+
+    private static final String[] SINGLE_TOKENS = {"3", "4", "*", "=", "%"};
+    private static final String LONG_LINE = "1 2 3 4 5 6 7 8 9 10 + + + + + + + + + = %";
+    private static final String COMMENTED_LINE = "# scale it # 100 7 % # and wrap it # % =";
+    private static final String POWER_EQUALS_LINE = "2 3 ^= %";
+
+    @Param({"0", "1024"})
+    public int cacheCapacity;
+
+    private SRPN srpn;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        srpn = new SRPN(new DiscardSink(blackhole), 0, cacheCapacity);
+        srpn.processCommand("1"); // the value every benchmark works against
+    }
+
+    @Benchmark
+    public void singleTokens() throws IOException {
+        for (String token : SINGLE_TOKENS) {
+            srpn.processCommand(token);
+        }
+    }
+
+    @Benchmark
+    public void longLine() throws IOException {
+        srpn.processCommand(LONG_LINE);
+    }
+
+    @Benchmark
+    public void commentedLine() throws IOException {
+        srpn.processCommand(COMMENTED_LINE);
+    }
+
+    @Benchmark
+    public void powerEqualsLine() throws IOException {
+        srpn.processCommand(POWER_EQUALS_LINE);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks whole scripts, each run in a fresh SRPN session as a user would.
+    * rHeavy enters 'r' far past the end of the random sequence, so it covers both the sequence and its fall-back
+    * dHeavy keeps a full stack and dumps it with 'd' on most lines, so it is dominated by printing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptBenchmark {
+
+    private String[] rHeavy;
+    private String[] dHeavy;
+    private OutputSink sink;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        sink = new DiscardSink(blackhole);
+        rHeavy = new String[200];
+        for (int i = 0; i < rHeavy.length; i++) {
+            rHeavy[i] = i % 4 == 3 ? "+ + + =" : i % 2 == 0 ? "r" : "r r r";
+        }
+        dHeavy = new String[200];
+        dHeavy[0] = "1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 21 22";
+        for (int i = 1; i < dHeavy.length; i++) {
+            dHeavy[i] = i % 3 == 0 ? "r d" : i % 3 == 1 ? "d" : "+ d";
+        }
+    }
+
+    @Benchmark
+    public void rHeavy() throws IOException {
+        run(rHeavy);
+    }
+
+    @Benchmark
+    public void dHeavy() throws IOException {
+        run(dHeavy);
+    }
+
+    private void run(String[] script) throws IOException {
+        SRPN srpn = new SRPN(sink);
+        for (String line : script) {
+            srpn.processCommand(line);
+        }
+    }
+}
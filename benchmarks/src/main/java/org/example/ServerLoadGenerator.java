@@ -0,0 +1,137 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ServerLoadGenerator drives an SrpnServer with many concurrent sessions and reports sessions/sec and command latency.
+    * Each session connects, pushes a value, then sends commands that each print exactly one line, waiting for every answer before the next command
+    * Sessions are opened by a fixed number of client threads, one session per thread at a time, so concurrency is the number of sessions open at once
+    * By default the server runs in this JVM on a free loopback port; --unix uses a Unix-domain socket, and --connect drives a server that is already running
+ * Run after building the benchmarks module:
+ *     java -cp benchmarks/target/benchmarks.jar org.example.ServerLoadGenerator [--sessions N] [--concurrency N] [--commands N] [--unix] [--connect port|path]
+ */
+public final class ServerLoadGenerator {
+
+    private static final byte[] FIRST = "1\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMAND = "3 * 1000 % =\n".getBytes(StandardCharsets.US_ASCII); // leaves the stack as it found it, printing 3
+
+    public static void main(String[] args) throws Exception {
+        int sessions = 20_000;
+        int concurrency = 200;
+        int commands = 20;
+        boolean unix = false;
+        String connect = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sessions" -> sessions = Integer.parseInt(args[++i]);
+                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                case "--commands" -> commands = Integer.parseInt(args[++i]);
+                case "--unix" -> unix = true;
+                case "--connect" -> connect = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SrpnServer server = null;
+        SocketAddress address;
+        if (connect != null) {
+            address = SrpnServer.parseAddress(connect);
+        } else {
+            SocketAddress bind = unix
+                    ? UnixDomainSocketAddress.of(Files.createTempDirectory("srpn").resolve("srpn.sock"))
+                    : SrpnServer.parseAddress("0");
+            server = new SrpnServer(bind, concurrency, SrpnServer.DEFAULT_IDLE_TIMEOUT);
+            address = server.start();
+            System.out.println("In-process server on " + address + (server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+        }
+
+        try {
+            run(address, 1_000, concurrency, commands, false); // warm-up
+            run(address, sessions, concurrency, commands, true);
+        } finally {
+            if (server != null) {
+                server.close();
+                if (unix && address instanceof UnixDomainSocketAddress socket) {
+                    Files.deleteIfExists(socket.getPath().getParent());
+                }
+            }
+        }
+    }
+
+    private static void run(SocketAddress address, int sessions, int concurrency, int commands, boolean report) throws Exception {
+        long[] latencies = new long[sessions * commands];
+        AtomicInteger nextSession = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        List<Future<?>> results = new ArrayList<>();
+        for (int c = 0; c < concurrency; c++) {
+            results.add(clients.submit(() -> {
+                ByteBuffer reply = ByteBuffer.allocate(256);
+                for (int session = nextSession.getAndIncrement(); session < sessions; session = nextSession.getAndIncrement()) {
+                    runSession(address, commands, reply, latencies, session * commands);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+        if (!report) {
+            return;
+        }
+
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        System.out.printf("%d sessions x %d commands, %d concurrent, in %.2f s%n", sessions, commands, concurrency, seconds);
+        System.out.printf("  %.0f sessions/s, %.0f commands/s%n", sessions / seconds, (double) latencies.length / seconds);
+        System.out.printf("  command latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e3);
+    }
+
+    private static void runSession(SocketAddress address, int commands, ByteBuffer reply, long[] latencies, int offset) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.write(ByteBuffer.wrap(FIRST));
+            for (int i = 0; i < commands; i++) {
+                long sent = System.nanoTime();
+                channel.write(ByteBuffer.wrap(COMMAND));
+                readLine(channel, reply);
+                latencies[offset + i] = System.nanoTime() - sent;
+            }
+        }
+    }
+
+    private static void readLine(SocketChannel channel, ByteBuffer reply) throws IOException {
+        reply.clear();
+        while (true) {
+            int from = reply.position();
+            if (channel.read(reply) < 0) {
+                throw new IOException("Server closed the session");
+            }
+            for (int i = from; i < reply.position(); i++) {
+                if (reply.get(i) == '\n') {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e3;
+    }
+}
@@ -0,0 +1,203 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * BatchEvaluator runs many independent scripts in parallel on a ForkJoinPool, each in its own fresh SRPN session.
+    * Each script's output is collected on its own, and written out in the order the scripts were given,
+      so the combined output is byte-for-byte what running the scripts one after another with "--file" prints
+    * Scripts are evaluated WINDOW at a time, the next window being evaluated while the last is written out, so memory stays bounded however many scripts there are
+    * A script that fails - a file that cannot be read, or a crash the command line program would also have - keeps the output it printed before failing,
+      and is reported to the error stream once its output has been written; the other scripts are unaffected
+ */
+public final class BatchEvaluator implements AutoCloseable {
+
+    static final int WINDOW = 4096; // scripts evaluated ahead of the output
+    static final int HEAP_READ_LIMIT = 1 << 20; // files up to this size are read, larger ones mapped
+    private static final int OUTPUT_BUFFER = 4096;
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final Charset inputCharset;
+    private final Charset outputCharset;
+
+    /**
+     * Creates a BatchEvaluator with its own pool of parallelism threads, reading and printing with the same charsets as Main.
+     */
+    public BatchEvaluator(int parallelism) {
+        this(new ForkJoinPool(parallelism), true, Charset.defaultCharset(), BufferedSink.stdoutCharset());
+    }
+
+    /**
+     * Creates a BatchEvaluator that runs on the given pool, which it leaves running when closed.
+     */
+    public BatchEvaluator(ForkJoinPool pool, Charset inputCharset, Charset outputCharset) {
+        this(pool, false, inputCharset, outputCharset);
+    }
+
+    private BatchEvaluator(ForkJoinPool pool, boolean ownsPool, Charset inputCharset, Charset outputCharset) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.inputCharset = inputCharset;
+        this.outputCharset = outputCharset;
+    }
+
+    /**
+     * run evaluates every script, writing their outputs to out in order, and returns the number of scripts that failed.
+        * Each failure is reported to errors as "<script>: <exception>"
+     */
+    public int run(List<Path> scripts, OutputStream out, PrintStream errors) throws IOException {
+        int failed = 0;
+        Window next = submit(scripts, 0);
+        while (next != null) {
+            Window current = next;
+            current.task.join();
+            next = submit(scripts, current.to); // evaluated while this window is written out
+            for (int i = 0; i < current.outputs.length; i++) {
+                out.write(current.outputs[i]);
+                if (current.failures[i] != null) {
+                    failed++;
+                    errors.println(scripts.get(current.from + i) + ": " + current.failures[i]);
+                }
+            }
+        }
+        out.flush();
+        return failed;
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * scripts lists the scripts to run from a path: every regular file in a directory, sorted by name,
+       or else a list file naming one script per line (blank lines are skipped).
+     */
+    public static List<Path> scripts(Path path) throws IOException {
+        List<Path> scripts = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                files.filter(Files::isRegularFile).sorted().forEach(scripts::add);
+            }
+        } else {
+            for (String line : Files.readAllLines(path)) {
+                if (!line.isBlank()) {
+                    scripts.add(Path.of(line.strip()));
+                }
+            }
+        }
+        return scripts;
+    }
+
+    private Window submit(List<Path> scripts, int from) {
+        if (from >= scripts.size()) {
+            return null;
+        }
+        Window window = new Window(from, Math.min(scripts.size(), from + WINDOW));
+        window.task = pool.submit(new Evaluate(scripts, window, 0, window.outputs.length));
+        return window;
+    }
+
+    /**
+     * read passes every line of a script to handler, reading small files straight into the heap rather than mapping each one.
+     */
+    private void read(Path script, LineDecoder.LineHandler handler) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > HEAP_READ_LIMIT) {
+                bytes = null;
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // read the whole file
+                }
+                bytes.flip();
+            }
+        }
+        if (bytes == null) {
+            new MappedLineReader(inputCharset, MappedLineReader.SEGMENT_SIZE).read(script, handler);
+            return;
+        }
+        LineDecoder lines = new LineDecoder(inputCharset, 256, 0);
+        lines.decode(bytes, true, handler);
+        lines.finish(handler);
+    }
+
+    /**
+     * Window is a run of scripts evaluated together, and their results.
+     */
+    private static final class Window {
+        final int from;
+        final int to;
+        final byte[][] outputs;
+        final Throwable[] failures;
+        ForkJoinTask<?> task;
+
+        Window(int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.outputs = new byte[to - from][];
+            this.failures = new Throwable[to - from];
+        }
+    }
+
+    /**
+     * Evaluate splits a range of a window in half until it is a single script, so scripts of very different lengths still balance across the pool.
+     */
+    @SuppressWarnings("serial") // a task is never serialized - it lives only as long as the pool runs it
+    private final class Evaluate extends RecursiveAction {
+
+        private final List<Path> scripts;
+        private final Window window;
+        private final int from;
+        private final int to;
+
+        Evaluate(List<Path> scripts, Window window, int from, int to) {
+            this.scripts = scripts;
+            this.window = window;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Evaluate(scripts, window, from, middle), new Evaluate(scripts, window, middle, to));
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SRPN srpn = new SRPN(new BufferedSink(bytes, outputCharset, OUTPUT_BUFFER));
+            try {
+                read(scripts.get(window.from + from), srpn::processCommand);
+            } catch (IOException | RuntimeException e) {
+                window.failures[from] = e;
+            }
+            try {
+                srpn.flush(); // whatever was printed before a failure is kept, as it is on the command line
+            } catch (IOException e) {
+                throw new AssertionError(e); // a ByteArrayOutputStream does not fail
+            }
+            window.outputs[from] = bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * BufferedSink collects output lines in a reusable byte buffer and writes them out in batches, instead of one synchronized println per line.
+    * Values are written as ASCII digits straight into the buffer, and the fixed messages are encoded once up front, so printing does not allocate
+    * The buffer is written out when the next line would not fit (the threshold), and on flush() - which must be called at the end of input
+    * Callers that need output written out sooner - e.g. after every line of interactive input - call flush() themselves, once per batch of lines
+ * The text produced is byte-for-byte what PrintStreamSink prints through a PrintStream using the same charset.
+ */
+public final class BufferedSink implements OutputSink {
+
+    public static final int DEFAULT_THRESHOLD = 1 << 16;
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final boolean asciiCompatible; // digits, ASCII text and the line separator encode to one byte per char
+    private final byte[] lineSeparator;
+    private final byte[][] diagnostics;
+    private final byte[] unrecognisedPrefix;
+    private final byte[] unrecognisedSuffix;
+    private final byte[] buffer;
+    private int count;
+
+    public BufferedSink(OutputStream out, Charset charset, int threshold) {
+        if (threshold < 64) {
+            throw new IllegalArgumentException("Threshold must be at least 64 bytes: " + threshold);
+        }
+        this.out = out;
+        this.charset = charset;
+        this.buffer = new byte[threshold];
+        String separator = System.lineSeparator();
+        String sample = "0123456789-\"?" + separator;
+        this.asciiCompatible = Arrays.equals(sample.getBytes(charset), sample.getBytes(StandardCharsets.US_ASCII));
+        this.lineSeparator = separator.getBytes(charset);
+        this.diagnostics = new byte[Diagnostic.values().length][];
+        for (Diagnostic diagnostic : Diagnostic.values()) {
+            diagnostics[diagnostic.ordinal()] = (diagnostic.text() + separator).getBytes(charset);
+        }
+        this.unrecognisedPrefix = "Unrecognised operator or operand \"".getBytes(charset);
+        this.unrecognisedSuffix = ("\"" + separator).getBytes(charset);
+    }
+
+    /**
+     * Creates a BufferedSink on System.out, using the charset System.out prints with.
+        * Batches are written through System.out, so a redirected System.out (System.setOut) is still respected
+     */
+    public static BufferedSink stdout() {
+        return new BufferedSink(System.out, stdoutCharset(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Returns the charset System.out prints with.
+     */
+    static Charset stdoutCharset() {
+        String encoding = System.getProperty("sun.stdout.encoding");
+        return encoding != null && Charset.isSupported(encoding) ? Charset.forName(encoding) : Charset.defaultCharset();
+    }
+
+    @Override
+    public void value(int value) throws IOException {
+        if (!asciiCompatible) {
+            writeText(String.valueOf(value));
+            endLine();
+            return;
+        }
+        reserve(11 + lineSeparator.length);
+        // digits are written backwards from the end of the number, working in negatives so MIN_VALUE needs no special case
+        int length = value < 0 ? stringSize(value) + 1 : stringSize(-value);
+        int position = count + length;
+        int remaining = value < 0 ? value : -value;
+        do {
+            int digit = remaining % 10;
+            buffer[--position] = (byte) ('0' - digit);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (value < 0) {
+            buffer[--position] = '-';
+        }
+        count += length;
+        endLine();
+    }
+
+    @Override
+    public void echo(char c) throws IOException {
+        if (asciiCompatible && c < 0x80) {
+            reserve(1);
+            buffer[count++] = (byte) c;
+        } else {
+            writeText(String.valueOf(c));
+        }
+        endLine();
+    }
+
+    @Override
+    public void diagnostic(Diagnostic diagnostic) throws IOException {
+        write(diagnostics[diagnostic.ordinal()]);
+    }
+
+    @Override
+    public void unrecognised(CharSequence token) throws IOException {
+        write(unrecognisedPrefix);
+        writeText(token);
+        write(unrecognisedSuffix);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        out.flush();
+    }
+
+    private void endLine() throws IOException {
+        write(lineSeparator);
+    }
+
+    /**
+     * writeText copies ASCII text straight into the buffer, and encodes anything else through the charset (replacing what it cannot encode, as PrintStream does).
+     */
+    private void writeText(CharSequence text) throws IOException {
+        if (asciiCompatible && isAscii(text)) {
+            int length = text.length();
+            if (length > buffer.length) {
+                write(text.toString().getBytes(charset));
+                return;
+            }
+            reserve(length);
+            for (int i = 0; i < length; i++) {
+                buffer[count++] = (byte) text.charAt(i);
+            }
+            return;
+        }
+        ByteBuffer encoded = charset.encode(CharBuffer.wrap(text));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        write(bytes);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flushBuffer();
+            out.write(bytes);
+            return;
+        }
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    /**
+     * reserve makes room for length more bytes, writing the buffer out first if they would not fit - the threshold.
+     */
+    private void reserve(int length) throws IOException {
+        if (count + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private static boolean isAscii(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of digits in a value that is zero or negative.
+     */
+    private static int stringSize(int negative) {
+        int limit = -10;
+        for (int digits = 1; digits < 10; digits++) {
+            if (negative > limit) {
+                return digits;
+            }
+            limit *= 10;
+        }
+        return 10;
+    }
+}
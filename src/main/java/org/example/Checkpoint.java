@@ -0,0 +1,193 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoint is the live state of a SRPN session at one moment, and its compact binary form.
+    * The state is everything a session needs to carry on: the stack values, the 'r' sequence position and the input history window
+        * The compiled line cache is not state - it only makes lines faster - so a restored session starts with an empty one
+    * commands is the number of commands the session had processed, so a CommandJournal knows which of its commands came after it
+    * Restoring builds a SRPN from at most 23 values and one history window, so it costs the same however many commands led up to it
+ * The format is big-endian, version 1:
+    * int magic "SRPN", byte version, long commands
+    * byte stack depth, then one int per value, bottom first
+    * byte 'r' position
+    * int history capacity, int history size, then each token oldest first as an int UTF-8 length (-1 for none) and its bytes
+    * int CRC32 of everything before it, so a torn or corrupted file is rejected rather than restored
+ */
+public final class Checkpoint {
+
+    static final int MAGIC = 0x5352504E; // "SRPN"
+    static final byte VERSION = 1;
+
+    private final long commands;
+    private final int[] stack;
+    private final int randomPosition;
+    private final int historyCapacity;
+    private final String[] history;
+
+    Checkpoint(long commands, int[] stack, int randomPosition, int historyCapacity, String[] history) {
+        if (stack.length > OperandStack.CAPACITY) {
+            throw new IllegalArgumentException("Stack depth out of range: " + stack.length);
+        }
+        if (history.length > historyCapacity) {
+            throw new IllegalArgumentException("History of " + history.length + " tokens exceeds its capacity " + historyCapacity);
+        }
+        this.commands = commands;
+        this.stack = stack;
+        this.randomPosition = randomPosition;
+        this.historyCapacity = historyCapacity;
+        this.history = history;
+    }
+
+    public long commands() {
+        return commands;
+    }
+
+    int[] stack() {
+        return stack;
+    }
+
+    int randomPosition() {
+        return randomPosition;
+    }
+
+    String[] history() {
+        return history;
+    }
+
+    /**
+     * restore creates a SRPN session in this state, printing to output and caching up to cacheCapacity compiled lines.
+     */
+    public SRPN restore(OutputSink output, int cacheCapacity, Metrics metrics) {
+        SRPN srpn = new SRPN(output, historyCapacity, cacheCapacity, metrics);
+        srpn.load(this);
+        return srpn;
+    }
+
+    /**
+     * encode returns the binary form of this checkpoint, ready to be written.
+     */
+    ByteBuffer encode() {
+        byte[][] tokens = new byte[history.length][];
+        int size = 4 + 1 + 8 + 1 + stack.length * 4 + 1 + 4 + 4 + 4;
+        for (int i = 0; i < history.length; i++) {
+            tokens[i] = history[i] != null ? history[i].getBytes(StandardCharsets.UTF_8) : null;
+            size += 4 + (tokens[i] != null ? tokens[i].length : 0);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        bytes.putInt(MAGIC).put(VERSION).putLong(commands);
+        bytes.put((byte) stack.length);
+        for (int value : stack) {
+            bytes.putInt(value);
+        }
+        bytes.put((byte) randomPosition);
+        bytes.putInt(historyCapacity).putInt(history.length);
+        for (byte[] token : tokens) {
+            if (token == null) {
+                bytes.putInt(-1);
+            } else {
+                bytes.putInt(token.length).put(token);
+            }
+        }
+        bytes.putInt(crc(bytes.array(), bytes.position()));
+        return bytes.flip();
+    }
+
+    /**
+     * decode reads a checkpoint from its binary form - failing with an IOException if it is not one this version can read.
+     */
+    static Checkpoint decode(ByteBuffer bytes) throws IOException {
+        try {
+            int start = bytes.position();
+            if (bytes.getInt() != MAGIC) {
+                throw new IOException("Not a SRPN checkpoint");
+            }
+            byte version = bytes.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            long commands = bytes.getLong();
+            int[] stack = new int[checkRange(bytes.get(), OperandStack.CAPACITY, "Stack depth")];
+            for (int i = 0; i < stack.length; i++) {
+                stack[i] = bytes.getInt();
+            }
+            int randomPosition = checkRange(bytes.get(), RandomSequence.MAX_POSITION, "Random sequence position");
+            int historyCapacity = checkRange(bytes.getInt(), Integer.MAX_VALUE, "History capacity");
+            String[] history = new String[checkRange(bytes.getInt(), historyCapacity, "History size")];
+            for (int i = 0; i < history.length; i++) {
+                int length = bytes.getInt();
+                if (length >= 0) {
+                    byte[] token = new byte[checkRange(length, bytes.remaining(), "Token length")];
+                    bytes.get(token);
+                    history[i] = new String(token, StandardCharsets.UTF_8);
+                }
+            }
+            int end = bytes.position();
+            int crc = bytes.getInt();
+            ByteBuffer covered = bytes.duplicate().position(start).limit(end);
+            byte[] checked = new byte[covered.remaining()];
+            covered.get(checked);
+            if (crc != crc(checked, checked.length)) {
+                throw new IOException("Checkpoint is corrupted (CRC mismatch)");
+            }
+            return new Checkpoint(commands, stack, randomPosition, historyCapacity, history);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Checkpoint is truncated or corrupted", e);
+        }
+    }
+
+    /**
+     * write saves this checkpoint to file, replacing it atomically - so a crash part way leaves the previous checkpoint intact.
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = encode();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * read loads the checkpoint saved in file.
+     */
+    public static Checkpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Checkpoint is too large: " + file);
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // keep reading until the buffer is full
+            }
+            return decode(bytes.flip());
+        }
+    }
+
+    private static int checkRange(int value, int max, String what) {
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException(what + " out of range: " + value);
+        }
+        return value;
+    }
+
+    private static int crc(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+}
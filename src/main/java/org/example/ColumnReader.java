@@ -0,0 +1,161 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * ColumnReader loads the int columns a ColumnarFormula is applied to.
+    * A CSV file holds every column: one row per line, values separated by commas - a first line that is not numbers is a header and skipped
+        * Lines are read through MappedLineReader and each value is parsed straight from the line, so no String is created per value
+    * A binary file holds one column: its values as consecutive big-endian 32-bit ints, with nothing else - read through mappings of up to 1 GB,
+      so a column may be larger than the 2 GB a single mapping allows
+ */
+final class ColumnReader {
+
+    private static final int MAX_ROWS = Integer.MAX_VALUE - 8; // the largest int[] a JVM will allocate
+
+    private ColumnReader() {
+    }
+
+    /**
+     * readCsv returns the columns of a CSV file - every row must have the same number of values.
+     */
+    static int[][] readCsv(Path file) throws IOException {
+        CsvColumns csv = new CsvColumns(file);
+        new MappedLineReader(StandardCharsets.US_ASCII, MappedLineReader.SEGMENT_SIZE).read(file, csv::line);
+        return csv.columns();
+    }
+
+    /**
+     * readBinary returns the column held in each binary file, in order - every file must hold the same number of values.
+     */
+    static int[][] readBinary(Path... files) throws IOException {
+        return readBinary(MappedLineReader.SEGMENT_SIZE, files);
+    }
+
+    /**
+     * readBinary maps each file segmentSize bytes at a time (a multiple of 4), so a column larger than 2 GB - the limit of a single mapping - is read in several.
+     */
+    static int[][] readBinary(long segmentSize, Path... files) throws IOException {
+        int[][] columns = new int[files.length][];
+        for (int c = 0; c < files.length; c++) {
+            try (FileChannel channel = FileChannel.open(files[c], StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size % Integer.BYTES != 0) {
+                    throw new IOException(files[c] + " is not a column of 32-bit ints (" + size + " bytes)");
+                }
+                if (size / Integer.BYTES > MAX_ROWS) {
+                    throw new IOException(files[c] + " holds " + size / Integer.BYTES + " values, more than the " + MAX_ROWS + " a column can hold");
+                }
+                columns[c] = new int[(int) (size / Integer.BYTES)];
+                int row = 0;
+                for (long position = 0; position < size; position += segmentSize) {
+                    IntBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position))
+                            .order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+                    int count = values.remaining();
+                    values.get(columns[c], row, count);
+                    row += count;
+                }
+            }
+            if (columns[c].length != columns[0].length) {
+                throw new IOException(files[c] + " has " + columns[c].length + " rows, but " + files[0] + " has " + columns[0].length);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * CsvColumns collects the values of each CSV line into growing int arrays, one per column.
+     */
+    private static final class CsvColumns {
+
+        private final Path file;
+        private int[][] columns;
+        private int rows;
+        private long lineNumber;
+
+        CsvColumns(Path file) {
+            this.file = file;
+        }
+
+        void line(CharSequence line) throws IOException {
+            lineNumber++;
+            if (line.length() == 0) {
+                return;
+            }
+            if (columns == null) {
+                if (!startsNumber(line)) {
+                    return; // a header
+                }
+                int count = 1;
+                for (int i = 0; i < line.length(); i++) {
+                    count += line.charAt(i) == ',' ? 1 : 0;
+                }
+                columns = new int[count][1024];
+            }
+            if (rows == columns[0].length) {
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], rows * 2);
+                }
+            }
+            int column = 0;
+            int start = 0;
+            for (int i = 0; i <= line.length(); i++) {
+                if (i == line.length() || line.charAt(i) == ',') {
+                    if (column == columns.length) {
+                        throw new IOException(file + ":" + lineNumber + ": expected " + columns.length + " values");
+                    }
+                    columns[column++][rows] = parse(line, start, i);
+                    start = i + 1;
+                }
+            }
+            if (column != columns.length) {
+                throw new IOException(file + ":" + lineNumber + ": expected " + columns.length + " values");
+            }
+            rows++;
+        }
+
+        int[][] columns() {
+            if (columns == null) {
+                return new int[0][];
+            }
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = Arrays.copyOf(columns[c], rows);
+            }
+            return columns;
+        }
+
+        private static boolean startsNumber(CharSequence line) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c != ' ' && c != '\t') {
+                    return c == '-' || c == '+' || (c >= '0' && c <= '9');
+                }
+            }
+            return false;
+        }
+
+        /**
+         * parse reads the int between start and end, ignoring spaces around it.
+         */
+        private int parse(CharSequence line, int start, int end) throws IOException {
+            while (start < end && line.charAt(start) == ' ') {
+                start++;
+            }
+            while (end > start && line.charAt(end - 1) == ' ') {
+                end--;
+            }
+            try {
+                return Integer.parseInt(line, start, end, 10);
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ":" + lineNumber + ": not an int: \"" + line.subSequence(start, end) + "\"");
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ColumnarFormula is an RPN formula compiled once and applied to every row of a set of int columns, instead of one processCommand call per row.
+    * A formula is whitespace-separated tokens: int literals, the operators + - * / % ^, and $n for the value of column n in the current row
+    * Each row's result is what a new SRPN session would print for the formula (with the row's values in place of $n) followed by '='
+        * outcomes records what else that session would report for the row, as bits - see bit(Diagnostic), UNRECOGNISED, FAILED and NO_VALUE
+        * The saturating arithmetic is Operator's, so every result matches a SRPN session exactly
+ * Rows are evaluated in batches of BATCH_SIZE, one instruction at a time over the whole batch, in tight loops over primitive arrays:
+    * Stack depth does not depend on the values unless an error is reported, so each stack slot is given its own batch-sized register,
+      and the errors that do not depend on the values (underflow, overflow, an empty stack at the end) are worked out once, when compiling
+    * Only "Divide by 0.", "Negative power." and a remainder by zero depend on the values - a row that hits one is marked, and evaluated again
+      on its own by evaluateRow, which follows SRPN step by step, as its stack depth then differs from the other rows
+ * A ColumnarFormula never changes once compiled, so it can be used by any number of threads at once.
+ */
+public final class ColumnarFormula {
+
+    public static final int BATCH_SIZE = 1024;
+
+    /** An operator reported as "Unrecognised operator or operand", as srpn does for an operator or '=' when the stack is full. */
+    public static final int UNRECOGNISED = 1 << 5;
+    /** The row made the session fail - a remainder by zero throws in srpn, ending the line. */
+    public static final int FAILED = 1 << 6;
+    /** '=' printed no value for the row, so its result is 0. */
+    public static final int NO_VALUE = 1 << 7;
+
+    private static final int PUSH_CONSTANT = 0;
+    private static final int PUSH_COLUMN = 1;
+    private static final int OPERATOR = 2;
+
+    private final String formula;
+    private final int[] code; // (op-code, operand) pairs, as in Program
+    private final int columns;
+
+    // What the batch path does, worked out by compile() - only the instructions whose stack depth allows them to run
+    private final int[] batchCode; // (op-code, operand, register) triples - an operator works on register and register + 1
+    private final int registers;
+    private final int staticOutcome; // the outcome of every row that is not marked
+    private final int resultRegister; // -1 if '=' prints no value
+
+    private ColumnarFormula(String formula, int[] code, int columns) {
+        this.formula = formula;
+        this.code = code;
+        this.columns = columns;
+        List<Integer> batch = new ArrayList<>();
+        int depth = 0;
+        int maxDepth = 0;
+        int outcome = 0;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            if (code[pc] != OPERATOR) {
+                if (depth == OperandStack.CAPACITY) {
+                    outcome |= bit(Diagnostic.STACK_OVERFLOW);
+                    continue;
+                }
+                batch.addAll(List.of(code[pc], code[pc + 1], depth++));
+                maxDepth = Math.max(maxDepth, depth);
+            } else if (depth == OperandStack.CAPACITY) {
+                outcome |= UNRECOGNISED;
+            } else if (depth < 2) {
+                outcome |= bit(Diagnostic.STACK_UNDERFLOW);
+            } else {
+                batch.addAll(List.of(OPERATOR, code[pc + 1], depth - 2));
+                depth--;
+            }
+        }
+        if (depth == OperandStack.CAPACITY) {
+            outcome |= UNRECOGNISED | NO_VALUE;
+        } else if (depth == 0) {
+            outcome |= bit(Diagnostic.STACK_EMPTY) | NO_VALUE;
+        }
+        this.batchCode = batch.stream().mapToInt(Integer::intValue).toArray();
+        this.registers = maxDepth;
+        this.staticOutcome = outcome;
+        this.resultRegister = (outcome & NO_VALUE) != 0 ? -1 : depth - 1;
+    }
+
+    /**
+     * compile turns a formula into a ColumnarFormula - failing with an IllegalArgumentException on a token it does not support.
+     */
+    public static ColumnarFormula compile(String formula) {
+        String[] tokens = formula.trim().split("\\s+");
+        int[] code = new int[tokens.length * 2];
+        int count = 0;
+        int columns = 0;
+        for (String token : tokens) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (token.length() == 1 && "+-*/%^".indexOf(token.charAt(0)) >= 0) {
+                code[count++] = OPERATOR;
+                code[count++] = Operator.of(token.charAt(0)).code();
+            } else if (token.charAt(0) == '$' && isDigits(token, 1)) {
+                int column = Integer.parseInt(token, 1, token.length(), 10);
+                code[count++] = PUSH_COLUMN;
+                code[count++] = column;
+                columns = Math.max(columns, column + 1);
+            } else if (isDigits(token, token.charAt(0) == '-' ? 1 : 0)) {
+                code[count++] = PUSH_CONSTANT;
+                code[count++] = Integer.parseInt(token); // a literal outside the int range fails here, as it would in srpn
+            } else {
+                throw new IllegalArgumentException("Unsupported formula token \"" + token + "\" - expected an int, an operator or $<column>");
+            }
+        }
+        return new ColumnarFormula(formula, Arrays.copyOf(code, count), columns);
+    }
+
+    private static boolean isDigits(String token, int start) {
+        if (start == token.length()) {
+            return false;
+        }
+        for (int i = start; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the outcome bit for a diagnostic.
+     */
+    public static int bit(Diagnostic diagnostic) {
+        return 1 << diagnostic.ordinal();
+    }
+
+    /**
+     * Returns the number of columns the formula reads - one more than the highest $n.
+     */
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public String toString() {
+        return formula;
+    }
+
+    /**
+     * evaluate applies the formula to every row of columns, putting each row's result in results and its outcome in outcomes.
+     */
+    public void evaluate(int[][] columns, int[] results, int[] outcomes) {
+        int rows = checkColumns(columns);
+        evaluate(columns, 0, rows, results, outcomes);
+    }
+
+    /**
+     * evaluate applies the formula to the rows from (inclusive) to to (exclusive) - so separate threads can evaluate separate ranges.
+     */
+    public void evaluate(int[][] columns, int from, int to, int[] results, int[] outcomes) {
+        checkColumns(columns);
+        if (from < 0 || to < from || to > results.length || to > outcomes.length || (this.columns > 0 && to > columns[0].length)) {
+            throw new IndexOutOfBoundsException("Rows " + from + " to " + to + " out of range");
+        }
+        int[][] register = new int[registers][BATCH_SIZE];
+        boolean[] marked = new boolean[BATCH_SIZE];
+        int[] stack = new int[OperandStack.CAPACITY];
+        for (int start = from; start < to; start += BATCH_SIZE) {
+            int length = Math.min(BATCH_SIZE, to - start);
+            boolean anyMarked = runBatch(columns, start, length, register, marked);
+            if (resultRegister >= 0) {
+                System.arraycopy(register[resultRegister], 0, results, start, length);
+            } else {
+                Arrays.fill(results, start, start + length, 0);
+            }
+            Arrays.fill(outcomes, start, start + length, staticOutcome);
+            if (anyMarked) {
+                for (int i = 0; i < length; i++) {
+                    if (marked[i]) {
+                        outcomes[start + i] = evaluateRow(columns, start + i, stack, results);
+                        marked[i] = false;
+                    }
+                }
+            }
+        }
+    }
+
+    private int checkColumns(int[][] columns) {
+        if (columns.length < this.columns) {
+            throw new IllegalArgumentException("Formula reads " + this.columns + " columns, but " + columns.length + " were given");
+        }
+        int rows = columns.length > 0 ? columns[0].length : 0;
+        for (int[] column : columns) {
+            if (column.length != rows) {
+                throw new IllegalArgumentException("Columns must all have the same number of rows");
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * runBatch runs the batch path over length rows from start, and returns whether any row was marked to be evaluated on its own.
+     */
+    private boolean runBatch(int[][] columns, int start, int length, int[][] register, boolean[] marked) {
+        boolean anyMarked = false;
+        for (int pc = 0; pc < batchCode.length; pc += 3) {
+            int[] a = register[batchCode[pc + 2]];
+            switch (batchCode[pc]) {
+                case PUSH_CONSTANT -> Arrays.fill(a, 0, length, batchCode[pc + 1]);
+                case PUSH_COLUMN -> System.arraycopy(columns[batchCode[pc + 1]], start, a, 0, length);
+                default -> anyMarked |= apply(Operator.fromCode(batchCode[pc + 1]), a, register[batchCode[pc + 2] + 1], length, marked);
+            }
+        }
+        return anyMarked;
+    }
+
+    /**
+     * apply sets a[i] = a[i] (operator) b[i] for every row, and returns whether it marked a row whose result depends on an error instead.
+        * A marked row's value is left as it is - it is evaluated again on its own
+     */
+    private static boolean apply(Operator operator, int[] a, int[] b, int length, boolean[] marked) {
+        boolean anyMarked = false;
+        switch (operator) {
+            case ADD -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] = Operator.clamp((long) a[i] + b[i]);
+                }
+            }
+            case SUBTRACT -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] = Operator.subtract(a[i], b[i]);
+                }
+            }
+            case MULTIPLY -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] = Operator.multiply(a[i], b[i]);
+                }
+            }
+            case DIVIDE -> {
+                for (int i = 0; i < length; i++) {
+                    if (a[i] == 0 || b[i] == 0) { // "Divide by 0." - srpn reports this for a zero on either side
+                        marked[i] = anyMarked = true;
+                    } else {
+                        a[i] = a[i] == Integer.MIN_VALUE && b[i] == -1 ? 0 : a[i] / b[i];
+                    }
+                }
+            }
+            case MODULO -> {
+                for (int i = 0; i < length; i++) {
+                    if (b[i] == 0) {
+                        marked[i] = anyMarked = true;
+                    } else {
+                        a[i] = Operator.modulo(a[i], b[i]);
+                    }
+                }
+            }
+            case POWER -> {
+                for (int i = 0; i < length; i++) {
+                    if (b[i] < 0) { // "Negative power."
+                        marked[i] = anyMarked = true;
+                    } else {
+                        a[i] = Operator.power(a[i], b[i]);
+                    }
+                }
+            }
+        }
+        return anyMarked;
+    }
+
+    /**
+     * evaluateRow runs the formula for one row the way SRPN.run does, sets its result, and returns its outcome.
+     */
+    int evaluateRow(int[][] columns, int row, int[] stack, int[] results) {
+        int size = 0;
+        int outcome = 0;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            int opcode = code[pc];
+            if (opcode != OPERATOR) {
+                if (size == OperandStack.CAPACITY) {
+                    outcome |= bit(Diagnostic.STACK_OVERFLOW);
+                } else {
+                    stack[size++] = opcode == PUSH_CONSTANT ? code[pc + 1] : columns[code[pc + 1]][row];
+                }
+                continue;
+            }
+            Operator operator = Operator.fromCode(code[pc + 1]);
+            if (size == OperandStack.CAPACITY) {
+                outcome |= UNRECOGNISED;
+            } else if (size < 2) {
+                outcome |= bit(Diagnostic.STACK_UNDERFLOW);
+            } else {
+                int valB = stack[size - 1];
+                int valA = stack[size - 2];
+                if (operator == Operator.DIVIDE && (valA == 0 || valB == 0)) {
+                    outcome |= bit(Diagnostic.DIVIDE_BY_ZERO);
+                } else if (operator == Operator.POWER && valB < 0) {
+                    outcome |= bit(Diagnostic.NEGATIVE_POWER);
+                } else {
+                    try {
+                        stack[size - 2] = operator.apply(valA, valB);
+                        size--;
+                    } catch (ArithmeticException e) { // a remainder by zero - srpn fails, and never reaches the '='
+                        results[row] = 0;
+                        return outcome | FAILED | NO_VALUE;
+                    }
+                }
+            }
+        }
+        if (size == OperandStack.CAPACITY || size == 0) {
+            results[row] = 0;
+            return outcome | NO_VALUE | (size == 0 ? bit(Diagnostic.STACK_EMPTY) : UNRECOGNISED);
+        }
+        results[row] = stack[size - 1];
+        return outcome;
+    }
+
+    /**
+     * describe returns the messages an outcome stands for, in srpn's words, separated by "; " - empty for a row with no errors.
+     */
+    public static String describe(int outcome) {
+        StringBuilder text = new StringBuilder();
+        for (Diagnostic diagnostic : Diagnostic.values()) {
+            if ((outcome & bit(diagnostic)) != 0) {
+                text.append(text.length() > 0 ? "; " : "").append(diagnostic.text());
+            }
+        }
+        if ((outcome & UNRECOGNISED) != 0) {
+            text.append(text.length() > 0 ? "; " : "").append("Unrecognised operator or operand");
+        }
+        if ((outcome & FAILED) != 0) {
+            text.append(text.length() > 0 ? "; " : "").append("Failed: / by zero");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,197 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * CommandJournal is an append-only log of the command lines a session has processed since its last Checkpoint.
+    * Recovery is the checkpoint plus a replay of the journal, so it only ever replays the commands since the last checkpoint
+    * The header records base - how many commands came before the first one in the journal - so that after a crash between writing a
+      checkpoint and resetting the journal, the commands the checkpoint already holds are skipped rather than applied twice
+    * append() hands each line to the OS straight away, so it survives the process dying; sync() also forces it to disk, for power loss
+ * The format is big-endian: int magic "SRPJ", byte version, long base, then each line as an int UTF-8 length and its bytes.
+    * A line cut short by a crash part way through append() is dropped, and the journal is cut back to the last whole line when opened
+ */
+public final class CommandJournal implements Closeable {
+
+    static final int MAGIC = 0x5352504A; // "SRPJ"
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 8;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer record = ByteBuffer.allocate(1 << 12); // reused for every line, and grown for a longer one
+    private long base;
+    private long commands;
+
+    private CommandJournal(FileChannel channel, long base, long commands) {
+        this.channel = channel;
+        this.base = base;
+        this.commands = commands;
+    }
+
+    /**
+     * open opens the journal in file for appending, creating it with the given base if it does not exist yet.
+     */
+    public static CommandJournal open(Path file, long base) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_SIZE) { // new, or cut short by a crash while it was being created or reset
+                CommandJournal journal = new CommandJournal(channel, base, 0);
+                journal.reset(base);
+                return journal;
+            }
+            Scan scan = scan(channel, Long.MAX_VALUE, null);
+            channel.truncate(scan.end); // drops a line cut short by a crash
+            channel.position(scan.end);
+            return new CommandJournal(channel, scan.base, scan.commands);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * replay passes the lines in the journal in file from command number from onwards to handler, in order, and returns how many it passed.
+        * A missing journal has no lines; a journal starting after from is missing commands, and fails with an IOException
+     */
+    static long replay(Path file, long from, LineDecoder.LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.size() < HEADER_SIZE ? 0 : scan(channel, from, handler).passed;
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * append adds a command line to the end of the journal.
+     */
+    public void append(CharSequence line) throws IOException {
+        record.clear().position(4);
+        encoder.reset();
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            CoderResult result = encoder.encode(chars, record, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(record);
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(record.capacity() * 2); // only an overflow is left, as errors are replaced
+            larger.put(record.flip());
+            record = larger;
+        }
+        record.putInt(0, record.position() - 4).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        commands++;
+    }
+
+    /**
+     * sync forces every line appended so far to the storage device.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * reset empties the journal once a checkpoint holding its commands has been written - the next command is number base.
+     */
+    public void reset(long base) throws IOException {
+        channel.truncate(0);
+        writeHeader(base);
+        this.base = base;
+        this.commands = 0;
+    }
+
+    /**
+     * Returns the number of commands before the first one in the journal.
+     */
+    public long base() {
+        return base;
+    }
+
+    /**
+     * Returns the number of commands in the journal.
+     */
+    public long commands() {
+        return commands;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeHeader(long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION).putLong(base).flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * scan reads the journal from the start, passing each whole line from command number from onwards to handler, if there is one.
+        * The journal must hold at least a header. It is mapped in one piece, as it only holds the commands since the last checkpoint
+     */
+    private static Scan scan(FileChannel channel, long from, LineDecoder.LineHandler handler) throws IOException {
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (bytes.getInt() != MAGIC) {
+            throw new IOException("Not a SRPN journal");
+        }
+        byte version = bytes.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal version " + version);
+        }
+        long base = bytes.getLong();
+        if (handler != null && base > from) {
+            throw new IOException("Journal starts at command " + base + ", after command " + from + " - commands are missing");
+        }
+        long commands = 0;
+        long passed = 0;
+        while (bytes.remaining() >= 4) {
+            int length = bytes.getInt(bytes.position());
+            if (length < 0 || length > bytes.remaining() - 4) {
+                break; // a line cut short by a crash
+            }
+            bytes.position(bytes.position() + 4);
+            ByteBuffer line = bytes.slice().limit(length);
+            bytes.position(bytes.position() + length);
+            if (handler != null && base + commands >= from) {
+                handler.line(StandardCharsets.UTF_8.decode(line));
+                passed++;
+            }
+            commands++;
+        }
+        return new Scan(base, commands, bytes.position(), passed);
+    }
+
+    private static final class Scan {
+        final long base;
+        final long commands;
+        final long end;
+        final long passed;
+
+        Scan(long base, long commands, long end, long passed) {
+            this.base = base;
+            this.commands = commands;
+            this.end = end;
+            this.passed = passed;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.example;
+
+/**
+ * Diagnostic lists the fixed messages srpn prints instead of a value, each with its exact text.
+    * "Unrecognised operator or operand" is not one of these, as it also names the token - see OutputSink.unrecognised()
+ */
+public enum Diagnostic {
+    STACK_OVERFLOW("Stack overflow."),
+    STACK_UNDERFLOW("Stack underflow."),
+    STACK_EMPTY("Stack empty."),
+    DIVIDE_BY_ZERO("Divide by 0."),
+    NEGATIVE_POWER("Negative power.");
+
+    private final String text;
+
+    Diagnostic(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Returns the message exactly as srpn prints it.
+     */
+    public String text() {
+        return text;
+    }
+}
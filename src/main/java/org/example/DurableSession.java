@@ -0,0 +1,153 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * DurableSession is a SRPN session that survives its process dying, by keeping a Checkpoint and a CommandJournal in a directory.
+    * Every command line is appended to the journal before it is processed, and its output is flushed before the next line is journaled
+        * So a crash can only lose the output of the line that was running - every line before it has been written out in full
+    * Every checkpointInterval lines the session's state
+      is written to the checkpoint and the journal is emptied - so the journal never holds more than checkpointInterval lines
+    * Opening the directory again recovers the session: the checkpoint is restored, and only the journal's lines are replayed
+        * Replayed lines print nothing, as their output was already written out before the crash
+        * A line that made the session fail (e.g. a number outside the int range) is replayed up to the same failure, then recovery carries on
+    * A directory with no checkpoint starts a new session with the given history capacity - otherwise the checkpoint's capacity is kept
+ * Not thread-safe - like SRPN, a DurableSession is used by one thread at a time.
+ */
+public final class DurableSession implements Closeable {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10_000;
+
+    static final String CHECKPOINT_FILE = "session.checkpoint";
+    static final String JOURNAL_FILE = "session.journal";
+
+    private final Path checkpointFile;
+    private final CommandJournal journal;
+    private final SRPN srpn;
+    private final OutputSink output;
+    private final int checkpointInterval;
+    private long commands;
+
+    private DurableSession(Path checkpointFile, CommandJournal journal, SRPN srpn, OutputSink output, int checkpointInterval, long commands) {
+        this.checkpointFile = checkpointFile;
+        this.journal = journal;
+        this.srpn = srpn;
+        this.output = output;
+        this.checkpointInterval = checkpointInterval;
+        this.commands = commands;
+    }
+
+    /**
+     * open recovers the session kept in directory, or starts a new one there, printing to output.
+     */
+    public static DurableSession open(Path directory, OutputSink output, int historyCapacity, int checkpointInterval, Metrics metrics) throws IOException {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1: " + checkpointInterval);
+        }
+        Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        Path journalFile = directory.resolve(JOURNAL_FILE);
+
+        Checkpoint checkpoint = Files.exists(checkpointFile)
+                ? Checkpoint.read(checkpointFile)
+                : new SRPN(DISCARD, historyCapacity, 0).checkpoint(0);
+        SRPN replaying = checkpoint.restore(DISCARD, ProgramCache.DEFAULT_CAPACITY, null);
+        long replayed = CommandJournal.replay(journalFile, checkpoint.commands(), line -> {
+            try {
+                replaying.processCommand(line);
+            } catch (RuntimeException e) {
+                // the session failed on this line before the crash too - its state up to the failure is kept
+            }
+        });
+        long commands = checkpoint.commands() + replayed;
+
+        SRPN srpn = replaying.checkpoint(commands).restore(output, ProgramCache.DEFAULT_CAPACITY, metrics);
+        CommandJournal journal = CommandJournal.open(journalFile, commands);
+        DurableSession session = new DurableSession(checkpointFile, journal, srpn, output, checkpointInterval, commands);
+        try {
+            session.checkpoint(); // starts from an empty journal, so the replayed lines are never replayed again
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return session;
+    }
+
+    /**
+     * processCommand journals a command line, passes it to the session - see SRPN.processCommand - and flushes its output.
+     */
+    public void processCommand(CharSequence line) throws IOException {
+        journal.append(line);
+        commands++;
+        try {
+            srpn.processCommand(line);
+        } finally {
+            // the line's output is committed before the next line is journaled - recovery replays it without printing it again
+            output.flush();
+        }
+        if (journal.commands() >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * checkpoint writes the session's state to the checkpoint, then empties the journal.
+        * If the process dies in between, the journal's base shows its lines are already in the checkpoint, so none are replayed twice
+     */
+    public void checkpoint() throws IOException {
+        srpn.checkpoint(commands).write(checkpointFile);
+        journal.reset(commands);
+    }
+
+    /**
+     * Returns the number of commands the session has processed since it was first started, including before any recovery.
+     */
+    public long commands() {
+        return commands;
+    }
+
+    public SRPN srpn() {
+        return srpn;
+    }
+
+    /**
+     * close writes out the session's output and a final checkpoint.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            srpn.flush();
+            checkpoint();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * DISCARD prints nothing - for replaying lines whose output has already been printed.
+     */
+    private static final OutputSink DISCARD = new OutputSink() {
+        @Override
+        public void value(int value) {
+        }
+
+        @Override
+        public void echo(char c) {
+        }
+
+        @Override
+        public void diagnostic(Diagnostic diagnostic) {
+        }
+
+        @Override
+        public void unrecognised(CharSequence token) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+}
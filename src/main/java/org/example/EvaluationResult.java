@@ -0,0 +1,220 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * EvaluationResult is everything one Evaluator call printed, as primitive entries rather than text, in the order it was printed.
+    * Each entry has a kind and an int: a VALUE holds the value, an ECHO the char, a DIAGNOSTIC the Diagnostic's ordinal,
+      and an UNRECOGNISED entry where its token starts in tokenChars() - tokenEnd() is where it ends
+    * The same EvaluationResult is cleared and refilled by every call on its Evaluator, and its arrays only grow - so a call does not allocate
+        * The arrays returned by kinds(), ints() and tokenChars() are its own, valid up to size() until the next call
+    * failure() is the exception the line failed with - srpn fails on a number outside the int range, for instance - or null
+ */
+public final class EvaluationResult {
+
+    public static final int VALUE = 0;
+    public static final int ECHO = 1;
+    public static final int DIAGNOSTIC = 2;
+    public static final int UNRECOGNISED = 3;
+
+    private static final Diagnostic[] DIAGNOSTICS = Diagnostic.values();
+
+    private int[] kinds = new int[16];
+    private int[] ints = new int[16];
+    private int[] tokenEnds = new int[16]; // for an UNRECOGNISED entry, where its token ends in tokenChars
+    private char[] tokenChars = new char[64];
+    private final TokenView token = new TokenView();
+    private int size;
+    private int tokenLength;
+    private RuntimeException failure;
+
+    EvaluationResult() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int kind(int index) {
+        return kinds[checkIndex(index)];
+    }
+
+    /**
+     * Returns the int of an entry - the value of a VALUE entry.
+     */
+    public int value(int index) {
+        return ints[checkIndex(index)];
+    }
+
+    public char echo(int index) {
+        return (char) ints[checkKind(index, ECHO)];
+    }
+
+    public Diagnostic diagnostic(int index) {
+        return DIAGNOSTICS[ints[checkKind(index, DIAGNOSTIC)]];
+    }
+
+    /**
+     * Returns the token of an UNRECOGNISED entry as a String - use tokenChars(), tokenStart() and tokenEnd() to read it without allocating.
+     */
+    public String token(int index) {
+        checkKind(index, UNRECOGNISED);
+        return new String(tokenChars, tokenStart(index), tokenEnd(index) - tokenStart(index));
+    }
+
+    public int tokenStart(int index) {
+        return ints[checkKind(index, UNRECOGNISED)];
+    }
+
+    public int tokenEnd(int index) {
+        return tokenEnds[checkKind(index, UNRECOGNISED)];
+    }
+
+    public int[] kinds() {
+        return kinds;
+    }
+
+    public int[] ints() {
+        return ints;
+    }
+
+    public char[] tokenChars() {
+        return tokenChars;
+    }
+
+    /**
+     * Returns the number of VALUE entries.
+     */
+    public int valueCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += kinds[i] == VALUE ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the last value printed, such as the answer to '=' - or the given default if no value was printed.
+     */
+    public int lastValue(int orElse) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (kinds[i] == VALUE) {
+                return ints[i];
+            }
+        }
+        return orElse;
+    }
+
+    /**
+     * Returns whether the given diagnostic was reported.
+     */
+    public boolean has(Diagnostic diagnostic) {
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == DIAGNOSTIC && ints[i] == diagnostic.ordinal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public RuntimeException failure() {
+        return failure;
+    }
+
+    /**
+     * writeTo prints every entry to sink, exactly as the session would have printed it there itself.
+     */
+    public void writeTo(OutputSink sink) throws IOException {
+        for (int i = 0; i < size; i++) {
+            switch (kinds[i]) {
+                case VALUE -> sink.value(ints[i]);
+                case ECHO -> sink.echo((char) ints[i]);
+                case DIAGNOSTIC -> sink.diagnostic(DIAGNOSTICS[ints[i]]);
+                default -> sink.unrecognised(token.set(ints[i], tokenEnds[i]));
+            }
+        }
+    }
+
+    void clear() {
+        size = 0;
+        tokenLength = 0;
+        failure = null;
+    }
+
+    void add(int kind, int value) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            ints = Arrays.copyOf(ints, size * 2);
+            tokenEnds = Arrays.copyOf(tokenEnds, size * 2);
+        }
+        kinds[size] = kind;
+        ints[size] = value;
+        size++;
+    }
+
+    void addToken(CharSequence token) {
+        int length = token.length();
+        if (tokenLength + length > tokenChars.length) {
+            tokenChars = Arrays.copyOf(tokenChars, Math.max(tokenChars.length * 2, tokenLength + length));
+        }
+        for (int i = 0; i < length; i++) {
+            tokenChars[tokenLength + i] = token.charAt(i);
+        }
+        add(UNRECOGNISED, tokenLength);
+        tokenLength += length;
+        tokenEnds[size - 1] = tokenLength;
+    }
+
+    void fail(RuntimeException failure) {
+        this.failure = failure;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return index;
+    }
+
+    private int checkKind(int index, int kind) {
+        if (kinds[checkIndex(index)] != kind) {
+            throw new IllegalArgumentException("Entry " + index + " is not of kind " + kind);
+        }
+        return index;
+    }
+
+    /**
+     * TokenView is a reusable CharSequence over one token in tokenChars, for writeTo.
+     */
+    private final class TokenView implements CharSequence {
+        private int start;
+        private int end;
+
+        TokenView set(int start, int end) {
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return tokenChars[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(tokenChars, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(tokenChars, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Evaluator is the API for embedding the calculator: it runs lines against one SRPN session and returns what they printed as an EvaluationResult.
+    * Nothing is printed - the session's output goes into the result, so nothing depends on System.out
+    * evaluate() returns the same EvaluationResult every time, refilled, so evaluating a line does not allocate once the result has grown to fit
+        * Read the result before the next call; it is overwritten
+    * No IOException is thrown, and a line that makes srpn fail (e.g. a number outside the int range) is reported by result.failure() instead of thrown
+    * Session state carries over from call to call, exactly as from line to line at the command line
+ * Main is a thin adapter over it: each line's result is written to its OutputSink with EvaluationResult.writeTo, and a failure is then rethrown.
+ * Not thread-safe - like SRPN, an Evaluator is used by one thread at a time.
+ */
+public final class Evaluator {
+
+    private final EvaluationResult result = new EvaluationResult();
+    private final SRPN srpn;
+
+    /**
+     * Creates an Evaluator with a new session, which keeps no input history.
+     */
+    public Evaluator() {
+        this(0, ProgramCache.DEFAULT_CAPACITY, null);
+    }
+
+    /**
+     * Creates an Evaluator with a new session - see SRPN's constructors for historyCapacity, cacheCapacity and metrics.
+     */
+    public Evaluator(int historyCapacity, int cacheCapacity, Metrics metrics) {
+        this.srpn = new SRPN(new Recorder(result), historyCapacity, cacheCapacity, metrics);
+    }
+
+    private Evaluator(Evaluator parent) {
+        this.srpn = parent.srpn.fork(new Recorder(result));
+    }
+
+    /**
+     * fork returns an Evaluator whose session starts in this one's state, with a result of its own - see SRPN.fork.
+        * Forking takes constant time and memory, so many alternative continuations can be tried from one prepared state, each on any thread
+     */
+    public Evaluator fork() {
+        return new Evaluator(this);
+    }
+
+    /**
+     * evaluate runs one line, as if it were entered at the command line, and returns what it printed.
+     */
+    public EvaluationResult evaluate(CharSequence line) {
+        result.clear();
+        run(line);
+        return result;
+    }
+
+    /**
+     * evaluate runs lines[from] to lines[to - 1] in turn, as if each were entered at the command line, and returns everything they printed.
+        * A single token is a line on its own, so this is also how to run a stream of tokens
+        * A line that fails stops the run - failure() is set, and the lines after it are not run, as the command line program would end there
+     */
+    public EvaluationResult evaluate(CharSequence[] lines, int from, int to) {
+        result.clear();
+        for (int i = from; i < to && result.failure() == null; i++) {
+            run(lines[i]);
+        }
+        return result;
+    }
+
+    /**
+     * flush publishes the session's metrics, if it has any - see SRPN.flush.
+     */
+    public void flush() {
+        try {
+            srpn.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a Recorder never throws
+        }
+    }
+
+    /**
+     * Returns the session, e.g. to read its ProgramCache counts or to take a Checkpoint.
+     */
+    SRPN srpn() {
+        return srpn;
+    }
+
+    private void run(CharSequence line) {
+        try {
+            srpn.processCommand(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a Recorder never throws
+        } catch (RuntimeException e) {
+            result.fail(e);
+        }
+    }
+
+    /**
+     * Recorder is the session's OutputSink, adding each line it prints to the result.
+     */
+    private static final class Recorder implements OutputSink {
+
+        private final EvaluationResult result;
+
+        Recorder(EvaluationResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public void value(int value) {
+            result.add(EvaluationResult.VALUE, value);
+        }
+
+        @Override
+        public void echo(char c) {
+            result.add(EvaluationResult.ECHO, c);
+        }
+
+        @Override
+        public void diagnostic(Diagnostic diagnostic) {
+            result.add(EvaluationResult.DIAGNOSTIC, diagnostic.ordinal());
+        }
+
+        @Override
+        public void unrecognised(CharSequence token) {
+            result.addToken(token);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.example;
+
+/**
+ * InputHistory is a fixed-size ring buffer holding the most recent tokens entered into a SRPN session.
+    * Once the buffer is full the oldest token is overwritten, so memory stays flat however long a session runs
+    * A capacity of 0 disables the history entirely - add() then does nothing
+    * fork() shares the buffer copy-on-write, like OperandStack.fork(), so forking a session does not copy its history
+ */
+final class InputHistory {
+
+    private String[] tokens;
+    private boolean shared; // tokens is also held by a fork, so must be copied before it is written
+    private int next; // index the next token will be written to
+    private int size;
+
+    InputHistory(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("History capacity must not be negative: " + capacity);
+        }
+        this.tokens = new String[capacity];
+    }
+
+    private InputHistory(InputHistory parent) {
+        this.tokens = parent.tokens;
+        this.shared = true;
+        this.next = parent.next;
+        this.size = parent.size;
+    }
+
+    /**
+     * fork returns a history holding the same tokens, sharing this history's buffer until either of them adds a token.
+     */
+    InputHistory fork() {
+        shared = tokens.length > 0;
+        return new InputHistory(this);
+    }
+
+    void add(String token) {
+        if (tokens.length == 0) {
+            return;
+        }
+        if (shared) {
+            tokens = tokens.clone();
+            shared = false;
+        }
+        tokens[next] = token;
+        next = next + 1 == tokens.length ? 0 : next + 1;
+        if (size < tokens.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Returns the token at the given position, where 0 is the oldest token still held.
+     */
+    String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int start = next - size;
+        if (start < 0) {
+            start += tokens.length;
+        }
+        int slot = start + index;
+        return tokens[slot >= tokens.length ? slot - tokens.length : slot];
+    }
+
+    /**
+     * Returns the tokens held, oldest first.
+     */
+    String[] toArray() {
+        String[] held = new String[size];
+        for (int i = 0; i < size; i++) {
+            held[i] = get(i);
+        }
+        return held;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return tokens.length;
+    }
+}
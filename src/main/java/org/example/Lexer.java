@@ -0,0 +1,266 @@
+package org.example;
+
+import static org.example.TokenBuffer.DUMP;
+import static org.example.TokenBuffer.ECHO;
+import static org.example.TokenBuffer.EQUALS;
+import static org.example.TokenBuffer.FAULT;
+import static org.example.TokenBuffer.LITERAL;
+import static org.example.TokenBuffer.LITERAL_OUT_OF_RANGE;
+import static org.example.TokenBuffer.OPERATOR;
+import static org.example.TokenBuffer.RANDOM;
+import static org.example.TokenBuffer.UNRECOGNISED;
+
+/**
+ * Lexer turns one line of user input into tokens in a single pass over its chars, without regular expressions or a String per char.
+    * It reproduces exactly how srpn splits a line up - including its quirks - so that SRPN only has to act on the tokens:
+        * A line shorter than 2 characters is a single item, e.g. "5", "d", or "" (which is unrecognised)
+        * Comments are removed: a '#' up to the next '#' is dropped, as is any lone '#', then the line is trimmed
+        * If only 1 character is left after that, the whole line is also reported as an item before the character itself is processed
+        * A '-' directly before a digit starts a negative number, and a '+' directly before a digit processes that single digit before the '+'
+        * A number is only finished by an operator, whitespace or the end of the line - letters in between are processed first, and a number left unfinished at the end of the line is dropped
+        * "^=" echoes the digit behind it (see handlePowerEqualsScenario)
+ * A Lexer keeps no state between lines, but is not thread-safe as its TokenBuffer is reused.
+ */
+final class Lexer {
+
+    /**
+     * tokenize clears tokens and fills it with the tokens for line, in the order srpn would process them.
+     */
+    void tokenize(CharSequence line, TokenBuffer tokens) {
+        tokens.clear();
+        int length = line.length();
+        char[] text = tokens.textBuffer(length * 3); // room for the line, its comment-free copy and the number words built from it
+        if (line instanceof String string) {
+            string.getChars(0, length, text, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                text[i] = line.charAt(i);
+            }
+        }
+
+        if (length < 2 || hasLineTerminator(text, length)) { // srpn only treats a line of 2+ characters (excluding line terminators) as a line
+            addItem(tokens, text, 0, length);
+            return;
+        }
+
+        int lineLength = handlePowerEqualsScenario(text, length, tokens);
+        if (lineLength < 0) { // the ^= quirk read past the line, nothing after it is processed
+            return;
+        }
+
+        int cleanLength = removeComments(text, lineLength);
+        if (cleanLength == 0) {
+            return;
+        }
+        if (cleanLength == 1) { // a single character left over is processed as the whole (comment and all) line first
+            addItem(tokens, text, 0, lineLength);
+        }
+        processLine(text, lineLength, cleanLength, tokens);
+    }
+
+    /**
+     * The power equals scenario handles the scenario where the ^= functionality in srpn returns the last value in the stack
+        * Scans the line from the end for "^=" - if the char 2 spaces earlier is a digit, srpn prints the char found at the index of that digit's char code
+        * If it is a whitespace instead and the char before that is a digit, that digit itself is printed
+        * Either way every '=' is removed from the line, so the calculation after ^ is not printed
+     * When srpn would have read outside of the line a FAULT token is added and -1 returned, otherwise the length of the line without its '=' signs.
+     */
+    private int handlePowerEqualsScenario(char[] text, int length, TokenBuffer tokens) {
+        boolean removeEquals = false;
+        for (int i = length - 1; i > 0; i--) {
+            if (text[i] == '=' && text[i - 1] == '^') {
+                if (i < 2) {
+                    tokens.add(FAULT, i - 2, 0, length);
+                    return -1;
+                }
+                char trailingChar = text[i - 2];
+                if (Character.isDigit(trailingChar)) {
+                    removeEquals = true;
+                    if (trailingChar >= length) {
+                        tokens.add(FAULT, trailingChar, 0, length);
+                        return -1;
+                    }
+                    tokens.add(ECHO, text[trailingChar], 0, 0);
+                } else if (Character.isWhitespace(trailingChar)) {
+                    if (i < 3) {
+                        tokens.add(FAULT, i - 3, 0, length);
+                        return -1;
+                    }
+                    if (Character.isDigit(text[i - 3])) {
+                        removeEquals = true;
+                        tokens.add(ECHO, text[i - 3], 0, 0);
+                    }
+                }
+            }
+        }
+        if (!removeEquals) {
+            return length;
+        }
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            if (text[i] != '=') {
+                text[kept++] = text[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * removeComments copies the line into the buffer straight after it, without comments, and trimmed of leading/trailing spaces and control characters.
+        * Returns the length of the comment-free copy.
+     */
+    private int removeComments(char[] text, int length) {
+        int written = length;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (c == '#') {
+                int close = indexOf(text, '#', i + 1, length);
+                if (close >= 0) {
+                    i = close; // skips the comment and its closing '#'
+                }
+                continue; // a lone '#' is dropped on its own
+            }
+            text[written++] = c;
+        }
+        int start = length;
+        int end = written;
+        while (start < end && text[start] <= ' ') {
+            start++;
+        }
+        while (end > start && text[end - 1] <= ' ') {
+            end--;
+        }
+        if (start > length) {
+            System.arraycopy(text, start, text, length, end - start);
+        }
+        return end - start;
+    }
+
+    /**
+     * processLine handles scenarios in which there is more than one character on a single line of user input.
+     * The method iterates through every char of the comment-free line, and adds tokens according to the following rules:
+        * 1: Is there a digit?
+            * If so, add it to the current word, and if it is at the end of the line, add the word as a token
+        * 2: Is there an operator, or a whitespace?
+            * a: Operator - checks if the character immediately after a '-' or '+' is a digit, and if so, treats as a negative number for the former, and the latter adds the digit first then the addition operator
+            * b: Whitespace - finishes the current word, if there is one
+        * 3: Any other character is added as a token on its own, for instance "=", "r" or "d" - without finishing the current word
+     * Words are built in the buffer after the comment-free line, so each one is a contiguous range of text even when other characters interrupt it.
+     */
+    private void processLine(char[] text, int start, int length, TokenBuffer tokens) {
+        int wordStart = start + length;
+        int wordLength = 0;
+
+        for (int i = 0; i < length; i++) {
+            char character = text[start + i];
+            boolean isWhitespace = Character.isWhitespace(character);
+            boolean nextIsDigit = i + 1 < length && Character.isDigit(text[start + i + 1]);
+
+            if (Character.isDigit(character)) {
+                text[wordStart + wordLength++] = character;
+                if (i == length - 1) {
+                    addItem(tokens, text, wordStart, wordLength);
+                    wordStart += wordLength;
+                    wordLength = 0;
+                }
+            } else if (isOperator(character) || isWhitespace) {
+                if (wordLength > 0) {
+                    addItem(tokens, text, wordStart, wordLength);
+                    wordStart += wordLength;
+                    wordLength = 0;
+                }
+                if (!isWhitespace) {
+                    if (character == '-' && nextIsDigit) { // a negative number rather than a subtraction
+                        text[wordStart + wordLength++] = character;
+                    } else {
+                        int operator = start + i;
+                        if (character == '+' && nextIsDigit) { // the digit after the + is processed first, then skipped
+                            addItem(tokens, text, operator + 1, 1);
+                            i++;
+                        }
+                        tokens.add(OPERATOR, character, operator, 1);
+                    }
+                }
+            } else {
+                addItem(tokens, text, start + i, 1);
+            }
+        }
+    }
+
+    /**
+     * addItem classifies a whole item of text, the way srpn does for single items and finished words:
+        * an optional '-' followed by ASCII digits is a literal, and 'r', 'd', '=' or an operator on its own are tokens of their own kind
+        * anything else is unrecognised
+     */
+    private static void addItem(TokenBuffer tokens, char[] text, int start, int length) {
+        if (isNumber(text, start, length)) {
+            boolean negative = text[start] == '-';
+            long value = 0;
+            for (int i = negative ? start + 1 : start; i < start + length && value <= Integer.MAX_VALUE + 1L; i++) {
+                value = value * 10 + (text[i] - '0');
+            }
+            value = negative ? -value : value;
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                tokens.add(LITERAL_OUT_OF_RANGE, 0, start, length);
+            } else {
+                tokens.add(LITERAL, (int) value, start, length);
+            }
+        } else if (length == 1 && text[start] == 'r') {
+            tokens.add(RANDOM, 0, start, length);
+        } else if (length == 1 && isOperator(text[start])) {
+            tokens.add(OPERATOR, text[start], start, length);
+        } else if (length == 1 && text[start] == 'd') {
+            tokens.add(DUMP, 0, start, length);
+        } else if (length == 1 && text[start] == '=') {
+            tokens.add(EQUALS, 0, start, length);
+        } else {
+            tokens.add(UNRECOGNISED, 0, start, length);
+        }
+    }
+
+    /**
+     * isNumber checks text against the pattern -?[0-9]+ - note only ASCII digits count, unlike Character.isDigit().
+     */
+    private static boolean isNumber(char[] text, int start, int length) {
+        int i = length > 0 && text[start] == '-' ? 1 : 0;
+        if (i == length) {
+            return false;
+        }
+        for (; i < length; i++) {
+            char c = text[start + i];
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * isOperator returns true for the six operators srpn supports: % - / + * ^
+     */
+    static boolean isOperator(char c) {
+        return c == '%' || c == '-' || c == '/' || c == '+' || c == '*' || c == '^';
+    }
+
+    /**
+     * hasLineTerminator checks for the characters a regex '.' does not match, as srpn never treats a line containing one as a line.
+     */
+    private static boolean hasLineTerminator(char[] text, int length) {
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(char[] text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
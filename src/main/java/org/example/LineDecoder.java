@@ -0,0 +1,167 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * LineDecoder turns a stream of bytes, fed to it in buffers of any size, into lines that it hands to a LineHandler.
+    * Bytes are decoded into one reusable char buffer, and each line is passed as a slice of that buffer - no String is created per line
+    * Lines are split exactly as BufferedReader.readLine() splits them: at "\n", "\r" or "\r\n", with a final unterminated line still counted
+    * Malformed input is replaced rather than reported, as an InputStreamReader does
+    * A char split across two buffers is left in the first buffer (its position stops short), to be fed again at the start of the next
+ * Used by MappedLineReader for script files and by SrpnServer for connections. Not thread-safe.
+ */
+final class LineDecoder {
+
+    /**
+     * LineHandler receives each line read - the line is only valid until the handler returns, as its chars are then reused.
+     */
+    @FunctionalInterface
+    interface LineHandler {
+        void line(CharSequence line) throws IOException;
+    }
+
+    private final CharsetDecoder decoder;
+    private final int maxLineLength;
+    private final LineSlice line = new LineSlice();
+    private CharBuffer chars;
+    private int scanned; // chars of the current partial line already checked for a terminator
+    private boolean skipLF; // the previous line ended with '\r', so a '\n' straight after it is part of the same terminator
+
+    /**
+     * Creates a LineDecoder whose char buffer starts at initialCapacity chars.
+        * A line longer than maxLineLength chars fails with an IOException - 0 allows lines of any length
+     */
+    LineDecoder(Charset charset, int initialCapacity, int maxLineLength) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate(initialCapacity);
+        this.maxLineLength = maxLineLength;
+    }
+
+    void reset() {
+        decoder.reset();
+        chars.clear();
+        scanned = 0;
+        skipLF = false;
+    }
+
+    /**
+     * decode reads as much of bytes as it can, passing each complete line to handler.
+        * endOfInput must only be true for the last buffer - any incomplete char left in it is then decoded as malformed
+     */
+    void decode(ByteBuffer bytes, boolean endOfInput, LineHandler handler) throws IOException {
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            emitLines(handler);
+            if (result.isUnderflow()) {
+                return;
+            }
+            if (result.isError()) {
+                result.throwException(); // not reached - errors are replaced
+            }
+        }
+    }
+
+    /**
+     * finish is called once all input has been decoded, and passes on the final line if it had no terminator.
+     */
+    void finish(LineHandler handler) throws IOException {
+        while (decoder.flush(chars) == CoderResult.OVERFLOW) {
+            emitLines(handler);
+        }
+        emitLines(handler);
+        if (chars.position() > 0) {
+            handler.line(line.set(chars.array(), 0, chars.position()));
+            chars.clear();
+        }
+        scanned = 0;
+    }
+
+    /**
+     * emitLines passes each complete line in the char buffer to handler, then moves the remaining partial line to the front.
+        * If the partial line fills the whole buffer, the buffer is doubled - the only time decoding allocates.
+     */
+    private void emitLines(LineHandler handler) throws IOException {
+        char[] array = chars.array();
+        int end = chars.position();
+        int start = 0;
+        for (int i = scanned; i < end; i++) {
+            char c = array[i];
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') {
+                    start = i + 1;
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r') {
+                handler.line(line.set(array, start, i - start));
+                start = i + 1;
+                skipLF = c == '\r';
+            }
+        }
+        int remaining = end - start;
+        if (maxLineLength > 0 && remaining > maxLineLength) {
+            throw new IOException("Line longer than " + maxLineLength + " characters");
+        }
+        if (start > 0) {
+            System.arraycopy(array, start, array, 0, remaining);
+        } else if (remaining == array.length) {
+            CharBuffer larger = CharBuffer.allocate(array.length * 2);
+            larger.put(array, 0, remaining);
+            chars = larger;
+            scanned = remaining;
+            return;
+        }
+        chars.position(remaining);
+        chars.limit(chars.capacity());
+        scanned = remaining;
+    }
+
+    /**
+     * LineSlice is a reusable CharSequence view of one line in the char buffer.
+     */
+    private static final class LineSlice implements CharSequence {
+
+        private char[] array;
+        private int offset;
+        private int length;
+
+        LineSlice set(char[] array, int offset, int length) {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return array[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(array, offset, length);
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package org.example;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 
 /*
  * Class containing the main method to read input from the user
  * and pass it to the SRPN program for processing.
- * You do not need to edit anything in this file.
+ * Run with "--file <path>" to process a script file in batch mode instead.
+ * Run with "--scripts <directory|list file> [--threads N]" to run many scripts in parallel, each in a fresh session.
+ * Run with "--server <port|socket path> [--max-sessions N] [--idle-timeout seconds]" to serve many sessions over sockets.
+ * Run with "--columns <formula> <file.csv | column files...>" to apply one formula to every row of a dataset.
+ * Run with "--session <directory>" to keep the session in a checkpoint and journal there, recovering it when run again.
  */
 
 public class Main {
@@ -13,30 +20,234 @@ public class Main {
     /* Main method repeatedly reads input from the user and passes it to SRPN */
     public static void main(String[] args) {
 
-        SRPN srpn = new SRPN(); //Creates a new instance of the SRPN class
+        if (args.length >= 2 && args[0].equals("--server")) {
+            System.exit(runServer(args));
+        }
+        if (args.length >= 2 && args[0].equals("--scripts")) {
+            System.exit(runScripts(args));
+        }
+        if (args.length >= 3 && args[0].equals("--columns")) {
+            System.exit(runColumns(args));
+        }
+        if (args.length == 2 && args[0].equals("--session")) {
+            System.exit(runSession(Path.of(args[1])));
+        }
 
         /*
-         * Code to take input from the command line.
-         * We'll cover this and the try/catch statements below in a future week.
-         * This input is passed to the processCommand() method in SRPN.java
+         * Output is batched rather than printed a line at a time. A script run with --file is written out in large batches,
+         * but input from stdin - a user at a terminal, or a program driving srpn over a pipe - is answered after every line,
+         * unless batching it too is turned on with -Dsrpn.output.batch=true (for piping in a whole script at once).
          */
+        boolean file = args.length == 2 && args[0].equals("--file");
+        boolean lineFlush = !file && !Boolean.getBoolean("srpn.output.batch");
+        OutputSink output = BufferedSink.stdout();
+        //Metrics are only recorded when turned on with -Dsrpn.metrics=true or -Dsrpn.metrics.dump=<seconds>
+        MetricsMonitor monitor = MetricsMonitor.fromSystemProperties();
+        Metrics metrics = monitor != null ? monitor.newMetrics() : null;
+        Evaluator evaluator = new Evaluator(0, ProgramCache.DEFAULT_CAPACITY, metrics); //Creates a new calculator session
+        //Each line is evaluated, then what it printed is written out - a line srpn fails on ends the program, as it always has
+        LineDecoder.LineHandler lines = line -> {
+            EvaluationResult result = evaluator.evaluate(line);
+            result.writeTo(output);
+            if (lineFlush) {
+                output.flush(); //one write for everything the line printed, rather than one per answer
+            }
+            if (result.failure() != null) {
+                throw result.failure();
+            }
+        };
+
+        int exitCode = 0;
+        try {
+            if (file) {
+                processFile(lines, Path.of(args[1]));
+            } else {
+                processInput(lines);
+            }
+        }
+        catch(IOException e) {
+            System.err.println(e.getMessage());
+            exitCode = 1;
+        }
+        finally {
+            //Anything still batched is written out at the end of input - or before an error ends the program
+            try {
+                evaluator.flush();
+                output.flush();
+            }
+            catch(IOException e) {
+                System.err.println(e.getMessage());
+                exitCode = 1;
+            }
+            if (monitor != null) {
+                monitor.close(); //prints the last dump, so a run shorter than the dump period still reports its metrics
+            }
+        }
+        //Exit code 0 for a graceful exit
+        System.exit(exitCode);
+    }
+
+    /*
+     * Code to take input from the command line.
+     * Each line is passed to the handler - the Evaluator, or a DurableSession
+     */
+    private static void processInput(LineDecoder.LineHandler handler) throws IOException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        while(true) {
+            String command = reader.readLine();
+            //Close on an End-of-file (EOF) (Ctrl-D on the terminal)
+            if(command == null){
+                return;
+            }
+            //Otherwise, (attempt to) process the character
+            handler.line(command);
+        }
+    }
 
+    /*
+     * Columnar mode: the formula is compiled once and applied to every row. Each row prints its result, then a tab and
+     * the errors it reported if there were any - a row with no result leaves the value empty. The row rate is reported on stderr.
+     */
+    private static int runColumns(String[] args) {
         try {
-            while(true) {
-                String command = reader.readLine();
-                //Close on an End-of-file (EOF) (Ctrl-D on the terminal)
-                if(command == null){
-                    //Exit code 0 for a graceful exit
-                    System.exit(0);
+            ColumnarFormula formula = ColumnarFormula.compile(args[1]);
+            Path[] files = new Path[args.length - 2];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = Path.of(args[i + 2]);
+            }
+            int[][] columns = files.length == 1 && files[0].toString().endsWith(".csv")
+                    ? ColumnReader.readCsv(files[0])
+                    : ColumnReader.readBinary(files);
+            int rows = columns.length > 0 ? columns[0].length : 0;
+            int[] results = new int[rows];
+            int[] outcomes = new int[rows];
+            long start = System.nanoTime();
+            formula.evaluate(columns, results, outcomes);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+            for (int row = 0; row < rows; row++) {
+                if ((outcomes[row] & ColumnarFormula.NO_VALUE) == 0) {
+                    out.write(Integer.toString(results[row]));
+                }
+                if (outcomes[row] != 0) {
+                    out.write('\t');
+                    out.write(ColumnarFormula.describe(outcomes[row]));
                 }
-                //Otherwise, (attempt to) process the character
-                srpn.processCommand(command);
+                out.write(System.lineSeparator());
             }
+            out.flush();
+            System.err.printf("Evaluated %d rows in %.3f s (%.0f rows/s)%n", rows, seconds, rows / seconds);
+            return 0;
+        }
+        catch(IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+    }
+
+    /*
+     * Durable mode: input is read as normal, but the session is recovered from the directory at the start
+     * and checkpointed there as it goes, so a session that dies can be picked up again by running the same command.
+     */
+    private static int runSession(Path directory) {
+        MetricsMonitor monitor = MetricsMonitor.fromSystemProperties();
+        OutputSink output = BufferedSink.stdout(); //the session flushes every line's output itself, before journaling the next
+        int exitCode = 0;
+        try (DurableSession session = DurableSession.open(directory, output, 0, DurableSession.DEFAULT_CHECKPOINT_INTERVAL,
+                monitor != null ? monitor.newMetrics() : null)) {
+            if (session.commands() > 0) {
+                System.err.println("Recovered session after " + session.commands() + " commands");
+            }
+            processInput(session::processCommand);
         }
         catch(IOException e) {
             System.err.println(e.getMessage());
-            System.exit(1);
+            exitCode = 1;
+        }
+        finally {
+            if (monitor != null) {
+                monitor.close(); // the final dump is printed even when the session ends with an exception
+            }
+        }
+        return exitCode;
+    }
+
+    /*
+     * Parallel batch mode: the output is the same as running each script with --file one after another,
+     * with any script that fails reported on stderr. Exits with 1 if any script failed.
+     */
+    private static int runScripts(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            if (args.length == 4 && args[2].equals("--threads")) {
+                threads = Integer.parseInt(args[3]);
+            } else if (args.length != 2) {
+                throw new IllegalArgumentException("Usage: --scripts <directory|list file> [--threads N]");
+            }
+            List<Path> scripts = BatchEvaluator.scripts(Path.of(args[1]));
+            long start = System.nanoTime();
+            int failed;
+            try (BatchEvaluator evaluator = new BatchEvaluator(threads)) {
+                failed = evaluator.run(scripts, System.out, System.err);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("Ran %d scripts on %d threads in %.3f s (%.0f scripts/s)%n", scripts.size(), threads, seconds, scripts.size() / seconds);
+            return failed == 0 ? 0 : 1;
+        }
+        catch(IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Server mode: every connection is its own SRPN session. Runs until the process is stopped.
+     */
+    private static int runServer(String[] args) {
+        int maxSessions = SrpnServer.DEFAULT_MAX_SESSIONS;
+        Duration idleTimeout = SrpnServer.DEFAULT_IDLE_TIMEOUT;
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "--max-sessions" -> maxSessions = Integer.parseInt(args[i + 1]);
+                    case "--idle-timeout" -> idleTimeout = Duration.ofSeconds(Long.parseLong(args[i + 1]));
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            SrpnServer server = new SrpnServer(SrpnServer.parseAddress(args[1]), maxSessions, idleTimeout, MetricsMonitor.fromSystemProperties());
+            System.err.println("Listening on " + server.start() + (server.usesVirtualThreads() ? " (virtual threads)" : ""));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                }
+                catch(IOException e) {
+                    System.err.println(e.getMessage());
+                }
+            }));
+            server.awaitTermination();
+            return 0;
+        }
+        catch(IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+        catch(InterruptedException e) {
+            return 1;
+        }
+    }
+
+    /*
+     * Batch mode: every line of the file is evaluated straight from a memory-mapped buffer,
+     * producing exactly the same output as piping the file in. The read rate is reported on stderr so stdout is unchanged.
+     */
+    private static void processFile(LineDecoder.LineHandler lines, Path file) throws IOException {
+        long start = System.nanoTime();
+        long bytes = new MappedLineReader().read(file, lines);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Processed %d bytes in %.3f s (%.1f MB/s)%n", bytes, seconds, bytes / 1e6 / seconds);
+    }
+}
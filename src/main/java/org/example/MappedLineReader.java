@@ -0,0 +1,54 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedLineReader reads a script file through memory-mapped segments and hands each line to a LineHandler, for batch runs of large files.
+    * A file is mapped SEGMENT_SIZE bytes at a time, so files larger than 2 GB (the limit of a single mapping) are read in several segments
+    * The bytes are split into lines by a LineDecoder - exactly as BufferedReader.readLine() splits them, and without a String per line
+    * Bytes are decoded with the platform charset, replacing malformed input, just as Main's InputStreamReader does
+ */
+final class MappedLineReader {
+
+    static final long SEGMENT_SIZE = 1L << 30; // 1 GB per mapping
+
+    private final LineDecoder lines;
+    private final long segmentSize;
+
+    MappedLineReader() {
+        this(Charset.defaultCharset(), SEGMENT_SIZE);
+    }
+
+    MappedLineReader(Charset charset, long segmentSize) {
+        this.lines = new LineDecoder(charset, 1 << 16, 0);
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * read passes every line of the file to handler, in order, and returns the number of bytes read.
+     */
+    long read(Path file, LineDecoder.LineHandler handler) throws IOException {
+        lines.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            do {
+                long length = Math.min(segmentSize, size - position);
+                boolean endOfInput = position + length == size;
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                lines.decode(bytes, endOfInput, handler);
+                if (bytes.position() == 0 && !endOfInput) {
+                    throw new IOException("Segment size " + segmentSize + " is too small to decode " + file);
+                }
+                position += bytes.position(); // a char split across segments is decoded again from the start of the next mapping
+            } while (position < size);
+            lines.finish(handler);
+            return size;
+        }
+    }
+}
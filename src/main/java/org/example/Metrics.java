@@ -0,0 +1,194 @@
+package org.example;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Metrics records what one SRPN session does: how often each operator runs, how often each error is reported,
+   how deep the stack has been, and how long lines take to process.
+    * Recording is plain arithmetic on a preallocated long[] - it never allocates, locks, or orders memory
+        * A line only costs one count, on its compiled Program - recordRuns() later adds up lines and operators from those counts and the
+          operator counts made when the line was compiled, when the Program leaves the session's cache or the metrics are published
+        * An operator compiled into a line that does not run is taken back off its count as the line is run: one after an error that ended
+          the line, or one reported as unrecognised on a full stack - both rare, so the common path still only costs the one count
+        * Errors are counted as they are reported, and the stack reports its depth only when it reaches a new high-water mark
+        * The counters therefore have a single writer: a Metrics must only be recorded into by one session (or by sessions on one thread)
+        * Other threads read a published copy, which the session refreshes on every sampled line and whenever SRPN.flush() is called
+          (and must refresh with SRPN.publishMetrics() before it is retired) - so a reader may be up to latencySampleInterval lines behind
+    * Line latency is sampled: every latencySampleInterval-th line is timed, so the two System.nanoTime() calls are not paid on every line
+        * Samples go into a log-linear histogram - 4 buckets per power of two, so a percentile is within 25% of the true value
+ * MetricsMonitor adds up the Metrics of any number of sessions and publishes them over JMX.
+ */
+public final class Metrics {
+
+    public static final int DEFAULT_LATENCY_SAMPLE_INTERVAL = 1024;
+
+    static final int OPERATORS = 0; // one counter per Operator, by code
+    static final int DIAGNOSTICS = OPERATORS + 6; // one counter per Diagnostic, by ordinal
+    static final int UNRECOGNISED = DIAGNOSTICS + 5;
+    static final int LINES = UNRECOGNISED + 1;
+    static final int STACK_HIGH_WATER = LINES + 1; // a maximum rather than a count
+    static final int COUNTERS = STACK_HIGH_WATER + 1;
+    static final int LATENCY_BUCKETS = 248; // enough for any positive long
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] counters = new long[COUNTERS]; // written by the session only - except STACK_HIGH_WATER, kept in a field
+    private int stackHighWater;
+    private final long[] published = new long[COUNTERS]; // a copy of counters for other threads to read
+    private final long[] latency = new long[LATENCY_BUCKETS]; // rarely written, so written opaquely rather than copied
+    private final int sampleMask;
+
+    public Metrics() {
+        this(DEFAULT_LATENCY_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Creates a Metrics that times every latencySampleInterval-th line - a power of two, 1 to time every line.
+     */
+    public Metrics(int latencySampleInterval) {
+        this.sampleMask = checkSampleInterval(latencySampleInterval) - 1;
+    }
+
+    static int checkSampleInterval(int latencySampleInterval) {
+        if (latencySampleInterval < 1 || Integer.bitCount(latencySampleInterval) != 1) {
+            throw new IllegalArgumentException("Sample interval must be a power of two: " + latencySampleInterval);
+        }
+        return latencySampleInterval;
+    }
+
+    public int latencySampleInterval() {
+        return sampleMask + 1;
+    }
+
+    /**
+     * Returns whether the line-th line of a session (counting from 0) is one to time.
+     */
+    boolean isSampled(long line) {
+        return (line & sampleMask) == 0;
+    }
+
+    void recordLatency(long nanos) {
+        int bucket = bucket(nanos);
+        SLOTS.setOpaque(latency, bucket, (long) SLOTS.getOpaque(latency, bucket) + 1);
+    }
+
+    /**
+     * recordRuns counts the lines a Program has run since it was last counted, and their operators, then starts its count again.
+     */
+    void recordRuns(Program program) {
+        long runs = program.runs;
+        if (runs == 0) {
+            return; // most of a full cache has not run since the last count
+        }
+        counters[LINES] += runs;
+        int[] operatorCounts = program.operatorCounts;
+        for (int operator = 0; operator < operatorCounts.length; operator++) {
+            counters[OPERATORS + operator] += operatorCounts[operator] * runs;
+        }
+        program.runs = 0;
+    }
+
+    /**
+     * recordUnrunOperator takes back the count of one operator of a line that did not run - see recordRuns.
+     */
+    void recordUnrunOperator(int operator) {
+        counters[OPERATORS + operator]--;
+    }
+
+    /**
+     * recordUnrunOperators takes back the counts of the operators in code[from] to code[end - 1], the instructions of a line that did not run.
+     */
+    void recordUnrunOperators(int[] code, int from, int end) {
+        for (int pc = from; pc < end; pc += 2) {
+            if (code[pc] == Program.OPERATOR) {
+                counters[OPERATORS + code[pc + 1]]--;
+            }
+        }
+    }
+
+    void recordDiagnostic(Diagnostic diagnostic) {
+        counters[DIAGNOSTICS + diagnostic.ordinal()]++;
+    }
+
+    void recordUnrecognised() {
+        counters[UNRECOGNISED]++;
+    }
+
+    /**
+     * recordStackDepth is told the stack's depth each time it goes deeper than it has been before.
+     */
+    void recordStackDepth(int depth) {
+        stackHighWater = Math.max(stackHighWater, depth);
+    }
+
+    /**
+     * publish copies the counters for other threads to read - called by SRPN.publishMetrics(), once the runs of its cached lines are counted.
+     */
+    void publish() {
+        counters[STACK_HIGH_WATER] = stackHighWater;
+        for (int i = 0; i < COUNTERS; i++) {
+            SLOTS.setOpaque(published, i, counters[i]);
+        }
+    }
+
+    public long lines() {
+        return (long) SLOTS.getOpaque(published, LINES);
+    }
+
+    /**
+     * Returns the number of times the operator with the given symbol (+ - * / % ^) ran, whatever the outcome - including those that reported
+        "Stack underflow.", "Divide by 0." or "Negative power.", or failed, but not those after a failure or at a full stack, which never run.
+     */
+    public long operations(char symbol) {
+        return (long) SLOTS.getOpaque(published, OPERATORS + Operator.of(symbol).code());
+    }
+
+    public long diagnostics(Diagnostic diagnostic) {
+        return (long) SLOTS.getOpaque(published, DIAGNOSTICS + diagnostic.ordinal());
+    }
+
+    public long unrecognised() {
+        return (long) SLOTS.getOpaque(published, UNRECOGNISED);
+    }
+
+    public int stackHighWater() {
+        return (int) (long) SLOTS.getOpaque(published, STACK_HIGH_WATER);
+    }
+
+    /**
+     * addTo adds these counters into totals (taking the larger high-water mark), and the latency histogram into buckets.
+     */
+    void addTo(long[] totals, long[] buckets) {
+        for (int i = 0; i < COUNTERS; i++) {
+            long value = (long) SLOTS.getOpaque(published, i);
+            totals[i] = i == STACK_HIGH_WATER ? Math.max(totals[i], value) : totals[i] + value;
+        }
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            buckets[i] += (long) SLOTS.getOpaque(latency, i);
+        }
+    }
+
+    /**
+     * bucket returns the histogram bucket of a latency: values below 4 have their own bucket, then each power of two is split into 4.
+     */
+    static int bucket(long nanos) {
+        if (nanos < 4) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int quarter = (int) (nanos >>> (exponent - 2)) & 3;
+        return (exponent - 1) * 4 + quarter;
+    }
+
+    /**
+     * Returns the smallest latency that falls in a bucket.
+     */
+    static long bucketFloor(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4 + 1;
+        return (long) (4 + bucket % 4) << (exponent - 2);
+    }
+}
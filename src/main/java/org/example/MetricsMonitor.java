@@ -0,0 +1,322 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * MetricsMonitor adds up the Metrics of every session it hands out, and publishes the totals as a JMX MXBean and, optionally, a periodic text dump.
+    * Each session records into its own Metrics (newMetrics), so recording never contends - the adding up is done when the totals are read
+    * When a session ends, retire() folds its counts into the totals kept here, so nothing it counted is lost
+    * Reading the totals takes a lock and allocates, but only the reader pays for it - the sessions being measured never wait on it
+ * Main turns it on, for its session or for every server session, with system properties:
+    * -Dsrpn.metrics=true registers the MXBean as org.example:type=SrpnMetrics
+    * -Dsrpn.metrics.dump=<seconds> prints the dump to stderr every that many seconds
+ */
+public final class MetricsMonitor implements SrpnMetricsMXBean, Closeable {
+
+    public static final String OBJECT_NAME = "org.example:type=SrpnMetrics";
+
+    private final int latencySampleInterval;
+    private final Set<Metrics> live = ConcurrentHashMap.newKeySet();
+    private final long[] retired = new long[Metrics.COUNTERS]; // guarded by this
+    private final long[] retiredLatency = new long[Metrics.LATENCY_BUCKETS]; // guarded by this
+    private ObjectName registeredName;
+    private ScheduledExecutorService dumper;
+    private PrintStream dumpOut;
+
+    public MetricsMonitor() {
+        this(Metrics.DEFAULT_LATENCY_SAMPLE_INTERVAL);
+    }
+
+    public MetricsMonitor(int latencySampleInterval) {
+        this.latencySampleInterval = Metrics.checkSampleInterval(latencySampleInterval);
+    }
+
+    /**
+     * Returns a MetricsMonitor configured by the srpn.metrics system properties, already registered and dumping - or null if they are not set.
+     */
+    static MetricsMonitor fromSystemProperties() {
+        boolean jmx = Boolean.getBoolean("srpn.metrics");
+        String dump = System.getProperty("srpn.metrics.dump");
+        if (!jmx && dump == null) {
+            return null;
+        }
+        MetricsMonitor monitor = new MetricsMonitor();
+        if (jmx) {
+            monitor.register(OBJECT_NAME);
+        }
+        if (dump != null) {
+            monitor.startDump(System.err, Duration.ofSeconds(Long.parseLong(dump)));
+        }
+        return monitor;
+    }
+
+    /**
+     * newMetrics returns a Metrics for one more session, whose counts are included in the totals from now on.
+     */
+    public Metrics newMetrics() {
+        Metrics metrics = new Metrics(latencySampleInterval);
+        live.add(metrics);
+        return metrics;
+    }
+
+    /**
+     * retire folds the counts of a session that has ended into the totals, and stops watching its Metrics.
+     */
+    public synchronized void retire(Metrics metrics) {
+        if (live.remove(metrics)) {
+            metrics.addTo(retired, retiredLatency);
+        }
+    }
+
+    /**
+     * register publishes this monitor on the platform MBeanServer under the given name.
+     */
+    public synchronized void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * startDump prints dump() to out every period, from a daemon thread.
+     */
+    public synchronized void startDump(PrintStream out, Duration period) {
+        if (dumper != null) {
+            throw new IllegalStateException("Dump already started");
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "srpn-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpOut = out;
+        long nanos = period.toNanos();
+        dumper.scheduleAtFixedRate(() -> out.print(dump()), nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * close stops the dump, printing it one last time, and unregisters the MXBean.
+     */
+    @Override
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+            dumpOut.print(dump());
+            dumpOut = null;
+        }
+        if (registeredName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(registeredName);
+            } catch (JMException ignored) {
+                // already gone
+            }
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public long getLines() {
+        return snapshot().counter(Metrics.LINES);
+    }
+
+    @Override
+    public int getSessions() {
+        return live.size();
+    }
+
+    @Override
+    public long getAdditions() {
+        return snapshot().operations(Operator.ADD);
+    }
+
+    @Override
+    public long getSubtractions() {
+        return snapshot().operations(Operator.SUBTRACT);
+    }
+
+    @Override
+    public long getMultiplications() {
+        return snapshot().operations(Operator.MULTIPLY);
+    }
+
+    @Override
+    public long getDivisions() {
+        return snapshot().operations(Operator.DIVIDE);
+    }
+
+    @Override
+    public long getModulos() {
+        return snapshot().operations(Operator.MODULO);
+    }
+
+    @Override
+    public long getPowers() {
+        return snapshot().operations(Operator.POWER);
+    }
+
+    @Override
+    public long getStackOverflows() {
+        return snapshot().diagnostics(Diagnostic.STACK_OVERFLOW);
+    }
+
+    @Override
+    public long getStackUnderflows() {
+        return snapshot().diagnostics(Diagnostic.STACK_UNDERFLOW);
+    }
+
+    @Override
+    public long getStackEmpty() {
+        return snapshot().diagnostics(Diagnostic.STACK_EMPTY);
+    }
+
+    @Override
+    public long getDivideByZeros() {
+        return snapshot().diagnostics(Diagnostic.DIVIDE_BY_ZERO);
+    }
+
+    @Override
+    public long getNegativePowers() {
+        return snapshot().diagnostics(Diagnostic.NEGATIVE_POWER);
+    }
+
+    @Override
+    public long getUnrecognisedTokens() {
+        return snapshot().counter(Metrics.UNRECOGNISED);
+    }
+
+    @Override
+    public int getStackHighWater() {
+        return (int) snapshot().counter(Metrics.STACK_HIGH_WATER);
+    }
+
+    @Override
+    public long getLatencySamples() {
+        return snapshot().samples();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return snapshot().percentile(0.50);
+    }
+
+    @Override
+    public long getLatencyP90Nanos() {
+        return snapshot().percentile(0.90);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return snapshot().percentile(0.999);
+    }
+
+    @Override
+    public long getLatencyMaxNanos() {
+        return snapshot().percentile(1.0);
+    }
+
+    @Override
+    public String dump() {
+        Snapshot snapshot = snapshot();
+        StringBuilder text = new StringBuilder();
+        text.append("SRPN metrics: ").append(snapshot.counter(Metrics.LINES)).append(" lines, ")
+                .append(live.size()).append(" active sessions").append(System.lineSeparator());
+        text.append("  operators:");
+        for (Operator operator : Operator.values()) {
+            text.append(' ').append(operator.symbol()).append(' ').append(snapshot.operations(operator));
+        }
+        text.append(System.lineSeparator());
+        text.append("  errors:");
+        for (Diagnostic diagnostic : Diagnostic.values()) {
+            text.append(" \"").append(diagnostic.text()).append("\" ").append(snapshot.diagnostics(diagnostic));
+        }
+        text.append(" unrecognised ").append(snapshot.counter(Metrics.UNRECOGNISED)).append(System.lineSeparator());
+        text.append("  stack high-water: ").append(snapshot.counter(Metrics.STACK_HIGH_WATER)).append(System.lineSeparator());
+        text.append("  latency (1 in ").append(latencySampleInterval).append(" lines, ").append(snapshot.samples()).append(" samples): ")
+                .append("p50 ").append(snapshot.percentile(0.50)).append(" ns, p90 ").append(snapshot.percentile(0.90))
+                .append(" ns, p99 ").append(snapshot.percentile(0.99)).append(" ns, p99.9 ").append(snapshot.percentile(0.999))
+                .append(" ns, max ").append(snapshot.percentile(1.0)).append(" ns").append(System.lineSeparator());
+        return text.toString();
+    }
+
+    private synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(retired.clone(), retiredLatency.clone());
+        for (Metrics metrics : live) {
+            metrics.addTo(snapshot.counters, snapshot.latency);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Snapshot is the totals at one moment.
+     */
+    private static final class Snapshot {
+        final long[] counters;
+        final long[] latency;
+
+        Snapshot(long[] counters, long[] latency) {
+            this.counters = counters;
+            this.latency = latency;
+        }
+
+        long counter(int index) {
+            return counters[index];
+        }
+
+        long operations(Operator operator) {
+            return counters[Metrics.OPERATORS + operator.code()];
+        }
+
+        long diagnostics(Diagnostic diagnostic) {
+            return counters[Metrics.DIAGNOSTICS + diagnostic.ordinal()];
+        }
+
+        long samples() {
+            long samples = 0;
+            for (long count : latency) {
+                samples += count;
+            }
+            return samples;
+        }
+
+        /**
+         * Returns the upper bound of the bucket the given fraction of samples falls within - 0 if there are no samples.
+         */
+        long percentile(double fraction) {
+            long samples = samples();
+            if (samples == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * samples));
+            long seen = 0;
+            for (int bucket = 0; bucket < latency.length; bucket++) {
+                seen += latency[bucket];
+                if (seen >= rank) {
+                    return bucket + 1 < latency.length ? Metrics.bucketFloor(bucket + 1) - 1 : Long.MAX_VALUE;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * OperandStack is a fixed-capacity LIFO stack of primitive ints used by SRPN to hold the values calculations are performed on.
+    * The srpn program only ever holds 23 values, so the backing array is allocated once and never grows
+    * fork() copies the stack in constant time by sharing the array - copy-on-write: whichever stack next pushes copies it first,
+      so a shared array is never written again and forked stacks can be used on different threads
+    * Values are stored as primitive ints, so pushing a value never boxes it into an Integer
+    * None of the methods are synchronized - a stack belongs to a single SRPN session, which is only ever used by one thread
+ * Bounds are not checked here: the caller validates isFull() / size() first, exactly as SRPN did with the previous Stack<Integer>.
+ */
+final class OperandStack {
+
+    /**
+     * CAPACITY is the maximum number of values srpn holds before reporting "Stack overflow."
+     */
+    static final int CAPACITY = 23;
+
+    private int[] values;
+    private boolean shared; // values is also held by a fork, so must be copied before it is written
+    private int size;
+    private int highWater; // the most values ever held at once
+    private final Metrics metrics; // told whenever highWater rises - at most CAPACITY times, so a line costs Metrics nothing for it
+
+    OperandStack(Metrics metrics) {
+        this.values = new int[CAPACITY];
+        this.metrics = metrics;
+    }
+
+    private OperandStack(OperandStack parent) {
+        this.values = parent.values;
+        this.shared = true;
+        this.size = parent.size;
+        this.highWater = parent.highWater;
+        this.metrics = null; // a fork records no metrics
+    }
+
+    /**
+     * fork returns a stack holding the same values, sharing this stack's array until either of them pushes.
+     */
+    OperandStack fork() {
+        shared = true;
+        return new OperandStack(this);
+    }
+
+    void push(int value) {
+        if (shared) {
+            values = values.clone();
+            shared = false;
+        }
+        values[size++] = value;
+        if (size > highWater) {
+            highWater = size;
+            if (metrics != null) {
+                metrics.recordStackDepth(size);
+            }
+        }
+    }
+
+    int pop() {
+        return values[--size];
+    }
+
+    /**
+     * Returns the value at the top of the stack without removing it.
+     */
+    int peek() {
+        return values[size - 1];
+    }
+
+    /**
+     * Returns the value at the given position, counted from the bottom of the stack (0 is the first value pushed).
+     */
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of the values, bottom first.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean isFull() {
+        return size == CAPACITY;
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+/**
+ * Operator is one of the six operators srpn supports, and the saturating arithmetic it performs.
+    * apply reproduces srpn's results exactly, but works them out in int/long arithmetic instead of checking Math.pow and long results up front:
+        * +, - and * are computed once in a long and clamped to the int range - 32-bit operands cannot overflow a long
+        * ^ is exponentiation by squaring, which stops as soon as the result is known to pass the int range
+        * / and % only need their edge cases checked
+    * srpn's odd results are kept, not corrected:
+        * MIN_VALUE / -1 is 0, and % with MAX_VALUE or MIN_VALUE on either side is that value
+        * A result below MIN_VALUE is MAX_VALUE if MAX_VALUE was an operand, e.g. -2 - MAX_VALUE, MAX_VALUE * -2, or (-2) ^ MAX_VALUE
+        * A negative power is 1/a^b truncated to an int - though handleOperation reports "Negative power." before one is applied
+    * Division and remainder by zero throw an ArithmeticException, as srpn's calculation does - handleOperation reports "Divide by 0." before a division by zero
+ * The per-operator helpers are static, so ColumnarFormula's column loops call the same arithmetic without a switch per value.
+ */
+enum Operator {
+    ADD('+'),
+    SUBTRACT('-'),
+    MULTIPLY('*'),
+    DIVIDE('/'),
+    MODULO('%'),
+    POWER('^');
+
+    private static final Operator[] VALUES = values();
+    private static final long POWER_LIMIT = 1L << 31; // the largest magnitude of a power within the int range (as MIN_VALUE)
+
+    private final char symbol;
+    private final String text; // symbol as a String, so naming the operator in a message does not allocate
+
+    Operator(char symbol) {
+        this.symbol = symbol;
+        this.text = String.valueOf(symbol);
+    }
+
+    /**
+     * Returns the Operator for one of the chars Lexer.isOperator() accepts.
+     */
+    static Operator of(char symbol) {
+        return switch (symbol) {
+            case '+' -> ADD;
+            case '-' -> SUBTRACT;
+            case '*' -> MULTIPLY;
+            case '/' -> DIVIDE;
+            case '%' -> MODULO;
+            case '^' -> POWER;
+            default -> throw new IllegalArgumentException("Not an operator: " + symbol);
+        };
+    }
+
+    /**
+     * Returns the Operator with the given op-code - its ordinal, which is what a compiled Program holds.
+     */
+    static Operator fromCode(int code) {
+        return VALUES[code];
+    }
+
+    int code() {
+        return ordinal();
+    }
+
+    char symbol() {
+        return symbol;
+    }
+
+    /**
+     * Returns the symbol as a String - the same instance every time.
+     */
+    String text() {
+        return text;
+    }
+
+    /**
+     * apply returns valueA (operator) valueB, saturated to the int range the way srpn saturates it.
+     */
+    int apply(int valueA, int valueB) {
+        return switch (this) {
+            case ADD -> clamp((long) valueA + valueB);
+            case SUBTRACT -> subtract(valueA, valueB);
+            case MULTIPLY -> multiply(valueA, valueB);
+            case DIVIDE -> valueA == Integer.MIN_VALUE && valueB == -1 ? 0 : valueA / valueB;
+            case MODULO -> modulo(valueA, valueB);
+            case POWER -> power(valueA, valueB);
+        };
+    }
+
+    static int subtract(int valueA, int valueB) {
+        long result = (long) valueA - valueB;
+        return result < Integer.MIN_VALUE && valueB == Integer.MAX_VALUE ? Integer.MAX_VALUE : clamp(result);
+    }
+
+    static int multiply(int valueA, int valueB) {
+        long result = (long) valueA * valueB;
+        boolean hasMax = valueA == Integer.MAX_VALUE || valueB == Integer.MAX_VALUE;
+        return result < Integer.MIN_VALUE && hasMax ? Integer.MAX_VALUE : clamp(result);
+    }
+
+    static int modulo(int valueA, int valueB) {
+        if (valueA == Integer.MAX_VALUE || valueB == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        if (valueA == Integer.MIN_VALUE || valueB == Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return valueA % valueB;
+    }
+
+    /**
+     * power raises base to exponent by squaring, giving up once the magnitude passes POWER_LIMIT - at most 31 rounds, however large the exponent.
+     */
+    static int power(int base, int exponent) {
+        if (exponent < 0) { // 1 / base^-exponent, truncated - 1 / 0 is infinite, so saturates
+            return base == 0 ? Integer.MAX_VALUE
+                    : base == 1 ? 1
+                    : base == -1 ? 1 - ((exponent & 1) << 1)
+                    : 0;
+        }
+        boolean negative = base < 0 && (exponent & 1) == 1;
+        long square = Math.abs((long) base);
+        long magnitude = 1;
+        for (int remaining = exponent; remaining != 0; remaining >>>= 1) {
+            if ((remaining & 1) == 1) {
+                magnitude *= square; // both at most POWER_LIMIT + 1, so the product fits in a long
+                if (magnitude > POWER_LIMIT) {
+                    break;
+                }
+            }
+            square = Math.min(square * square, POWER_LIMIT + 1);
+        }
+        if (magnitude > POWER_LIMIT || (magnitude == POWER_LIMIT && !negative)) {
+            return negative && exponent != Integer.MAX_VALUE ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+        return (int) (negative ? -magnitude : magnitude);
+    }
+
+    static int clamp(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+}
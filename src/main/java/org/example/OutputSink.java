@@ -0,0 +1,37 @@
+package org.example;
+
+import java.io.IOException;
+
+/**
+ * OutputSink receives everything a SRPN session prints, one line at a time, as what it is rather than as text.
+    * This keeps SRPN independent of System.out - the sink decides how (and when) each line is written
+    * PrintStreamSink writes each line straight to a PrintStream, exactly as srpn prints it
+    * BufferedSink batches lines into a reusable byte buffer, for when output volume matters
+ */
+public interface OutputSink {
+
+    /**
+     * A value printed by '=' or 'd'.
+     */
+    void value(int value) throws IOException;
+
+    /**
+     * The char echoed by the ^= quirk.
+     */
+    void echo(char c) throws IOException;
+
+    /**
+     * One of the fixed srpn messages, e.g. "Stack overflow."
+     */
+    void diagnostic(Diagnostic diagnostic) throws IOException;
+
+    /**
+     * An "Unrecognised operator or operand" message for token - which is only valid until this method returns.
+     */
+    void unrecognised(CharSequence token) throws IOException;
+
+    /**
+     * Writes out anything the sink is still holding.
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,41 @@
+package org.example;
+
+import java.io.PrintStream;
+
+/**
+ * PrintStreamSink prints each line to a PrintStream as soon as it is produced - the way srpn always has.
+    * This is the default sink, on System.out, so the output is exactly what srpn prints
+ */
+public final class PrintStreamSink implements OutputSink {
+
+    private final PrintStream out;
+
+    public PrintStreamSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void value(int value) {
+        out.println(value);
+    }
+
+    @Override
+    public void echo(char c) {
+        out.println(c);
+    }
+
+    @Override
+    public void diagnostic(Diagnostic diagnostic) {
+        out.println(diagnostic.text());
+    }
+
+    @Override
+    public void unrecognised(CharSequence token) {
+        out.println("Unrecognised operator or operand " + "\"" + token + "\"");
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * Program is a line of input compiled into a compact array of op-codes, so that a line seen before can be run without lexing it again.
+    * Each instruction is two ints in code: the op-code, then its operand (a literal value, an Operator code, or an echoed char) - length() instructions in all
+    * texts holds a String per instruction, but only where one is needed - the token of an error message, the digits of a literal srpn cannot parse,
+      or every token when the session keeps an input history. Otherwise the entry is null.
+    * operatorCounts counts the line's operators once, when it is compiled, so Metrics can count them from the number of times the line has run
+ * A cached Program's code never changes once compiled and holds no session state, so it can be run against any SRPN's stack.
+    * The one thing that changes is runs, which a session with Metrics counts - so a Program is only ever held by one session
+    * A line the cache does not take is compiled into the session's scratch Program instead (see recompile), so it allocates nothing
+ */
+final class Program {
+
+    /** Pushes the operand - or reports "Stack overflow." */
+    static final int PUSH_LITERAL = 0;
+    /** Pushes the next value of the random sequence - or reports "Stack overflow." */
+    static final int PUSH_RANDOM = 1;
+    /** Applies the operator held in the operand to the top two values. */
+    static final int OPERATOR = 2;
+    /** '=' - prints the value at the top of the stack. */
+    static final int PRINT_TOP = 3;
+    /** 'd' - prints every value in the stack. */
+    static final int DUMP = 4;
+    /** Reports "Unrecognised operator or operand" for the token in texts. */
+    static final int ERROR_MESSAGE = 5;
+    /** A literal outside the int range - fails to parse the text, as srpn does, unless the stack is full. */
+    static final int PARSE_ERROR = 6;
+    /** Prints the operand as a char, for the ^= quirk. Not an input token, so not recorded. */
+    static final int ECHO = 7;
+    /** Fails with the ArrayIndexOutOfBoundsException message in texts, for the ^= quirk. Not recorded either. */
+    static final int FAULT = 8;
+
+    int[] code;
+    String[] texts;
+    private int length;
+    final int[] operatorCounts = new int[6]; // how many times each Operator appears in the line, by code
+    long runs; // how many times the session has run it since its Metrics last counted them - only kept when the session records Metrics
+
+    private Program(int capacity) {
+        this.code = new int[capacity * 2];
+        this.texts = new String[capacity];
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * compile turns the tokens of one line into a Program.
+        * keepText keeps the text of every token, which a session needs when it records an input history
+     */
+    static Program compile(TokenBuffer tokens, boolean keepText) {
+        Program program = new Program(tokens.count());
+        program.fill(tokens, keepText);
+        return program;
+    }
+
+    /**
+     * recompile turns the tokens of another line into this Program, reusing its arrays - growing them only for a longer line.
+        * Only for a session's scratch Program, which runs the lines it does not cache - a cached Program is never recompiled
+     */
+    Program recompile(TokenBuffer tokens, boolean keepText) {
+        int count = tokens.count();
+        if (count > texts.length) {
+            code = new int[count * 2];
+            texts = new String[count];
+        } else if (count < length) {
+            Arrays.fill(texts, count, length, null); // the last line's texts must not be kept alive
+        }
+        Arrays.fill(operatorCounts, 0);
+        fill(tokens, keepText);
+        return this;
+    }
+
+    private void fill(TokenBuffer tokens, boolean keepText) {
+        int count = tokens.count();
+        for (int i = 0; i < count; i++) {
+            int opcode = opcodeFor(tokens.kind(i));
+            code[i * 2] = opcode;
+            code[i * 2 + 1] = opcode == OPERATOR ? Operator.of((char) tokens.value(i)).code() : tokens.value(i);
+            if (opcode == OPERATOR) {
+                operatorCounts[code[i * 2 + 1]]++;
+            }
+            if (opcode == FAULT) {
+                texts[i] = "Index " + tokens.value(i) + " out of bounds for length " + tokens.textLength(i);
+            } else if (opcode != ECHO && (keepText || opcode == ERROR_MESSAGE || opcode == PARSE_ERROR)) {
+                texts[i] = tokens.text(i);
+            } else {
+                texts[i] = null;
+            }
+        }
+        length = count;
+    }
+
+    private static int opcodeFor(int kind) {
+        return switch (kind) {
+            case TokenBuffer.LITERAL -> PUSH_LITERAL;
+            case TokenBuffer.LITERAL_OUT_OF_RANGE -> PARSE_ERROR;
+            case TokenBuffer.RANDOM -> PUSH_RANDOM;
+            case TokenBuffer.OPERATOR -> OPERATOR;
+            case TokenBuffer.DUMP -> DUMP;
+            case TokenBuffer.EQUALS -> PRINT_TOP;
+            case TokenBuffer.ECHO -> ECHO;
+            case TokenBuffer.FAULT -> FAULT;
+            default -> ERROR_MESSAGE;
+        };
+    }
+}
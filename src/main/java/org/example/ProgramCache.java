@@ -0,0 +1,206 @@
+package org.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ProgramCache is a bounded, least-recently-used cache of compiled Programs keyed by the text of the line they were compiled from.
+    * Built on a LinkedHashMap in access order, so a hit moves the line to the back and the line at the front is the one evicted
+    * Lines are looked up by their chars through a reusable probe key, so any CharSequence can be looked up without turning it into a String
+        * Only a line that is added to the cache is copied into a String
+    * A line is only added the second time it misses, so a script of lines that are never repeated - a typical --file run - adds none of them:
+      the hash of each missed line is kept in a small table, and a line whose hash is already there is admitted (see admits)
+        * The table is only created on the first miss, small, and doubles as it fills up to 2 to 4 times the capacity - so a cache that has seen
+          few lines, such as a fork's, stays small however large its capacity
+    * Lines longer than MAX_LINE_LENGTH are never cached, so one huge line cannot pin its text in memory
+    * Counts hits, misses and evictions, so its effectiveness can be checked against real input
+    * For a session with Metrics, each Program counts its own runs - recordRuns() adds them into the metrics, as does evicting the Program
+ * Like the rest of a SRPN session, it is not thread-safe.
+ */
+public final class ProgramCache {
+
+    /**
+     * DEFAULT_CAPACITY is the number of distinct lines a SRPN session caches unless told otherwise.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    static final int MAX_LINE_LENGTH = 1024;
+
+    private final int capacity;
+    private final Map<LineKey, Program> programs;
+    private final Metrics metrics; // null when the session records no metrics
+    private final LineKey probe = new LineKey(); // reused for every lookup
+    private static final int MISSED_INITIAL_LENGTH = 16;
+
+    private int[] missed; // hashes of lines that have missed once, by hash - a line missing again while its hash is here is admitted; created on the first miss
+    private int missedCount; // the slots of missed in use
+    private int missedHash; // the hash of the line last looked up
+    private long lookups;
+    private long misses;
+    private long evictions;
+
+    ProgramCache(int capacity, Metrics metrics) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.metrics = metrics;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LineKey, Program> eldest) {
+                if (size() > ProgramCache.this.capacity) {
+                    evictions++;
+                    if (ProgramCache.this.metrics != null) {
+                        ProgramCache.this.metrics.recordRuns(eldest.getValue());
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached Program for line, or null if it has to be compiled - which is counted as a miss.
+     */
+    Program get(CharSequence line) {
+        Program program = null;
+        if (capacity > 0) {
+            program = programs.get(probe.set(line));
+            missedHash = probe.hash;
+            probe.set(null); // the probe must not keep the caller's line alive
+        }
+        lookups++;
+        if (program == null) {
+            misses++;
+        }
+        return program;
+    }
+
+    /**
+     * admits returns whether a line that has just missed should be compiled into a Program of its own and put in the cache.
+        * That is only a line that has missed before, as far as the table of missed hashes remembers - must be called right after get(line)
+        * A line too long to cache, or any line when the capacity is 0, is never admitted
+     */
+    boolean admits(CharSequence line) {
+        if (capacity == 0 || line.length() > MAX_LINE_LENGTH) {
+            return false;
+        }
+        if (missed == null) {
+            missed = new int[MISSED_INITIAL_LENGTH];
+        }
+        int slot = (missedHash ^ (missedHash >>> 16)) & (missed.length - 1);
+        if (missed[slot] == missedHash) {
+            return true;
+        }
+        if (missed[slot] == 0) {
+            missedCount++;
+        }
+        missed[slot] = missedHash;
+        if (missedCount * 2 > missed.length && missed.length < maxMissedLength()) {
+            growMissed();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the length the table of missed hashes stops growing at - a power of two, 2 to 4 times capacity.
+     */
+    private int maxMissedLength() {
+        return Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+    }
+
+    /**
+     * growMissed doubles the table of missed hashes, moving each hash to its slot in the new table - of hashes that now share a slot, one is kept.
+     */
+    private void growMissed() {
+        int[] grown = new int[missed.length * 2];
+        missedCount = 0;
+        for (int hash : missed) {
+            if (hash != 0) {
+                int slot = (hash ^ (hash >>> 16)) & (grown.length - 1);
+                if (grown[slot] == 0) {
+                    missedCount++;
+                }
+                grown[slot] = hash;
+            }
+        }
+        missed = grown;
+    }
+
+    void put(CharSequence line, Program program) {
+        if (capacity > 0 && line.length() <= MAX_LINE_LENGTH) {
+            programs.put(new LineKey().set(line.toString()), program);
+        }
+    }
+
+    /**
+     * recordRuns adds the runs of every cached Program into the session's metrics.
+     */
+    void recordRuns() {
+        for (Program program : programs.values()) {
+            metrics.recordRuns(program);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return programs.size();
+    }
+
+    public long hits() {
+        return lookups - misses;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of lines looked up - every line the session has processed.
+     */
+    long lookups() {
+        return lookups;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * LineKey compares lines by their chars, and hashes them the same way String does.
+        * Keys stored in the cache always hold a String; only the probe ever holds another kind of CharSequence.
+     */
+    private static final class LineKey {
+
+        private CharSequence text;
+        private int hash;
+
+        LineKey set(CharSequence line) {
+            text = line;
+            if (line instanceof String string) {
+                hash = string.hashCode(); // cached by String itself
+            } else if (line != null) {
+                int h = 0;
+                for (int i = 0; i < line.length(); i++) {
+                    h = 31 * h + line.charAt(i);
+                }
+                hash = h;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LineKey other && hash == other.hash && CharSequence.compare(text, other.text) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example;
+
+/**
+ * RandomSequence is specifically designed to handle the 'r' case:
+    * The set of integers displayed in the srpn program were the same each time and repeated in the same sequence
+    * Therefore, it made sense to create an array:
+        * Made it final as this is a fixed set of values that should not be changed, only accessed
+        * int as they all sit within the integer range of -2^31 to 2^31-1.
+        * Sorted so it can be iterated over
+ * Rather than counting every 'r' in the input history each time, the sequence keeps a cursor of how many 'r' tokens have been recorded.
+    * Once the cursor passes the end of the sequence srpn keeps returning the first value, so the cursor stops there and can never overflow.
+ */
+final class RandomSequence {
+
+    private static final int[] VALUES = {
+            1804289383, 846930886, 1681692777, 1714636915, 1957747793,
+            424238335, 719885386, 1649760492, 596516649, 1189641421,
+            1025202362, 1350490027, 783368690, 1102520059, 2044897763,
+            1967513926, 1365180540, 1540383426, 304089172, 1303455736,
+            35005211, 521595368
+    };
+
+    /**
+     * MAX_POSITION is the furthest position() can reach - one past the end of VALUES.
+     */
+    static final int MAX_POSITION = VALUES.length + 1;
+
+    /**
+     * recorded is the number of 'r' tokens seen so far, capped one past the end of VALUES.
+     */
+    private int recorded;
+
+    /**
+     * Records that another 'r' token has been entered - including ones rejected with "Stack overflow.", as srpn still counts those.
+     */
+    void advance() {
+        if (recorded < MAX_POSITION) {
+            recorded++;
+        }
+    }
+
+    /**
+     * Returns the value for the most recently recorded 'r'.
+        * The index is the number of earlier 'r' tokens; once that reaches 22 the first value in the sequence is returned instead.
+     */
+    int current() {
+        int index = recorded == 0 ? 0 : recorded - 1;
+        return index < VALUES.length ? VALUES[index] : VALUES[0];
+    }
+
+    int position() {
+        return recorded;
+    }
+
+    /**
+     * fork returns a sequence at the same position - which is all a sequence holds, so it is copied rather than shared.
+     */
+    RandomSequence fork() {
+        RandomSequence fork = new RandomSequence();
+        fork.recorded = recorded;
+        return fork;
+    }
+
+    /**
+     * Moves the sequence to a position taken from position() - as when a session is restored from a Checkpoint.
+     */
+    void restore(int position) {
+        if (position < 0 || position > MAX_POSITION) {
+            throw new IllegalArgumentException("Random sequence position out of range: " + position);
+        }
+        recorded = position;
+    }
+}
@@ -1,7 +1,7 @@
 package org.example;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.Objects;
 
 /**
  * Class for the SRPN calculator. Currently it outputs "0" for every "=" sign.
@@ -11,339 +11,364 @@ import java.util.*;
 public class SRPN {
 
     /**
-     * userInput a list used to store each user input. This is mostly used within the code like a cache:
-        * Assists with scenarios like the ^= operation, where SRPN returns the last integer in the stack instead of doing a calculation
-        * Keeps track of ALL recorded values
-        * Instantiated as a final field because only operations will be performed on this ArrayList
+     * userInput is an optional, fixed-size record of the most recent user inputs:
+        * Each token is recorded as it is processed, oldest tokens are overwritten once the history is full
+        * Instantiated as a final field because only operations will be performed on this history
             * It is important for the functionality of the field that it cannot be reassigned - otherwise the values could be replaced
+        * Disabled (capacity 0) unless a capacity is passed to the constructor, as the calculator itself no longer needs it
      */
-    private final LinkedList<String> userInput = new LinkedList<>();
+    private final InputHistory userInput;
     /**
      * valueStack holds the values in which calculations will be performed on, and/or outputted as the result
-        * The Stack type is used as it allows utilisation of LIFO (last-in-first-out) logic
+        * The OperandStack type is used as it allows utilisation of LIFO (last-in-first-out) logic
             * This allows for use of helpful LIFO methods such as push(), pop(), peek(), which are used frequently in this program
-            * Also means instead of having to find the last index as in ArrayLists (arr.size-1), you can simply use lastElement(), which enhances readability
+            * Values are held in a fixed 23-slot int array, so no Integer is boxed and no lock is taken per operand or operator
+        * A forked session shares the array copy-on-write (see fork)
      */
-    private final Stack<Integer> valueStack = new Stack<>();
+    private final OperandStack valueStack;
 
     /**
-     * operators is a String array used for the sole purpose of validating the string input against these signs
-        * Final as it should not be modified or reassigned.
+     * randomSequence tracks how many times 'r' has been entered, and returns the matching value from the srpn sequence (see RandomSequence)
      */
-    private final String[] operators = new String[]{"%", "-", "/", "+", "*", "^"};
+    private final RandomSequence randomSequence;
 
     /**
-     * randomSequence is specifically designed to handle the 'r' case:
-        * The set of integers displayed in the srpn program were the same each time and repeated in the same sequence
-        * Therefore, it made sense to create an array:
-            * Made it final as this is a fixed set of values that should not be changed, only accessed
-            * int as they all sit within the integer range of -2^31 to 2^31-1.
-            * Sorted so it can be iterated over
+     * lexer and tokens split each line of input into primitive token codes - both are reused for every line, so processing a line does not allocate
+        * tokens is only created when the first line is compiled, so a session that only runs cached lines - or a fork that runs none - never needs it
      */
-    private final int[] randomSequence = {
-            1804289383, 846930886, 1681692777, 1714636915, 1957747793,
-            424238335, 719885386, 1649760492, 596516649, 1189641421,
-            1025202362, 1350490027, 783368690, 1102520059, 2044897763,
-            1967513926, 1365180540, 1540383426, 304089172, 1303455736,
-            35005211, 521595368
-    };
+    private final Lexer lexer = new Lexer();
+    private TokenBuffer tokens;
 
     /**
-     * processCommand is the initial caller method, and the only method in this class that has a public modifier.
-        * This is because all of the logic is designed to take place within the SRPN class, with only processCommand being called by main
-     * The idea of this method is to essentially handle the initial processing of the string s:
-        * First, the method checks that the string matches the regex pattern of more than one character.
-            * If it isn't, then the method treats it as a single string item, and calls processStringItem
-            * If it is, then the processing continues.
-        * The next step is to check the presence of the power-equal sign "^=" that exhibits odd behaviour (see method handlePowerEqualsScenario for more)
-        * After this, the method needs to check for comments:
-            * Uses a regex pattern that identifies 2 hash symbols and any text in between them, replacing the text with a whitespace
-            * After the text is removed, so is the hash symbols, replaced again with a whitespace, and trimmed to removed leading/trailing spaces
-            * This ensures no comments are processed from the input
-        * Finally, the method checks that the new variable commentFreeString is not empty before converting it to a char array for the next step:
-            * if the char array is only one character, it will process the string as a single item
-            * if not, it will treat it as a line, and enter the processLine method.
-     * Fundamentally, the method is designed to identify the scope of the input before delegating the logic flow to other methods, therefore satisfying the modularisation principle of OOP.
+     * scratch is the Program a line the cache does not take is compiled into, and run from - reused for every such line, so a file of distinct lines allocates nothing per line
      */
-    public void processCommand(String s) throws IOException {
-        if (s.matches("^.{2,}$")) {  // matches more than 1 character
+    private Program scratch;
 
-            s = handlePowerEqualsScenario(s); // only modifies s if ^= is present
-            String commentFreeString = s.replaceAll("#(.*?)#", "").replace("#","").trim();  // any characters caught between # will be removed, as well as the # signs, then trim
+    /**
+     * programCache keeps the compiled Program of recently seen lines, so a repeated line skips the Lexer entirely
+     */
+    private final ProgramCache programCache;
 
-            if (!commentFreeString.isEmpty()){
-                char[] chars = commentFreeString.toCharArray();
-                if (chars.length == 1){ // checks if it is a single digit or single character
-                    userInput.add(s); // add it to the "cached" history of inputs
-                    processStringItem(s); // then process the char / digit
-                }
-                processLine(chars);
-            }
+    /**
+     * output receives every value and message the calculator prints - see OutputSink
+     */
+    private final OutputSink output;
 
-        } else {
-            userInput.add(s); // if user input is a single char, will be processed straight away, no further check needed
-            processStringItem(s);
-        }
+    /**
+     * metrics records what this session does, for a MetricsMonitor to publish - null when metrics are off
+     */
+    private final Metrics metrics;
+
+    /**
+     * Creates a SRPN calculator that prints to System.out and does not keep an input history.
+     */
+    public SRPN() {
+        this(0);
     }
 
     /**
-     * processLine handles scenarios in which there is more than one character on a single line of user input.
-     * The method iterates through every char in the array passed to it, and processes the input according to the following rules:
-        * 1: Is there a digit?
-            * If so, check if it is at the end of the array, and if so, build the word - if not, add the char to "word" array and continue the loop
-        * 2: Is there an operator, or a whitespace?
-            * a: Operator - checks if the character immediately after a '-' or '+' is a digit, and if so, treats as a negative number for the former, and the latter processes the digit first then applies the addition operator
-            * b: Whitespace - checks if it is the first character and "word" is not empty - if this condition is true, it will call buildAndFlushWord to send the word to be processed.
-                * this is because whitespaces should not be processed, and also helps distinguish whether numbers consist of single or multiple digits
-        * 3: Any other character will be processed separately, for instance "=", "r" or "d"
-     * Attempts to abstract logic from its parent method whilst organising the more complex logic of processing a line under one clear responsibility, therefore satisfying OOP and SOLID principles
+     * Creates a SRPN calculator that prints to System.out and keeps the most recent historyCapacity tokens in a ring buffer.
      */
+    public SRPN(int historyCapacity) {
+        this(historyCapacity, ProgramCache.DEFAULT_CAPACITY);
+    }
 
-    private void processLine(char[] chars) throws IOException {
-        List<String> word = new ArrayList<>();
+    /**
+     * Creates a SRPN calculator that prints to System.out, keeps the most recent historyCapacity tokens, and caches the compiled form of up to cacheCapacity distinct lines.
+        * A cacheCapacity of 0 compiles every line afresh
+     */
+    public SRPN(int historyCapacity, int cacheCapacity) {
+        this(new PrintStreamSink(System.out), historyCapacity, cacheCapacity);
+    }
 
-        for (int i = 0; i < chars.length; i++) { // Loop to iterate through the length of the array, selecting each char individually
-            char character = chars[i]; // selects first char
-            boolean isWhitespace = Character.isWhitespace(character); // uses inbuilt Character type method to check if it is a whitespace
-            boolean isDigit = Character.isDigit(character);
-            boolean nextIsDigit = i + 1 < chars.length && Character.isDigit(chars[i + 1]); // makes sure next char is digit and has not reached end of array
+    /**
+     * Creates a SRPN calculator that prints to output and does not keep an input history.
+     */
+    public SRPN(OutputSink output) {
+        this(output, 0, ProgramCache.DEFAULT_CAPACITY);
+    }
 
+    /**
+     * Creates a SRPN calculator that prints to output, keeps the most recent historyCapacity tokens, and caches up to cacheCapacity compiled lines.
+     */
+    public SRPN(OutputSink output, int historyCapacity, int cacheCapacity) {
+        this(output, historyCapacity, cacheCapacity, null);
+    }
 
-            if (isDigit) {
-                word.add(String.valueOf(character)); // will add digit to a word "list" until either an operator or whitespace is reached
-                if (i == chars.length-1) { // if i reaches the end of the chain, will save and process the final char
-                    buildAndFlushWord(word); // processes the word
-                }
-            } else if (isOperator(String.valueOf(character)) || isWhitespace) {
-                if (i != 0 && !word.isEmpty()) { // if its not the first char and the word is not empty, it will save and process the char, then move on
-                    buildAndFlushWord(word);
-                }
-                if (!isWhitespace) { // if it is not a whitespace, it must be an operator (by default), so it saves and processes the char
+    /**
+     * Creates a SRPN calculator that also records into metrics, unless it is null - a Metrics must not be shared by sessions on different threads.
+     */
+    public SRPN(OutputSink output, int historyCapacity, int cacheCapacity, Metrics metrics) {
+        this.output = Objects.requireNonNull(output, "output");
+        this.metrics = metrics;
+        this.userInput = new InputHistory(historyCapacity);
+        this.valueStack = new OperandStack(metrics);
+        this.randomSequence = new RandomSequence();
+        this.programCache = new ProgramCache(cacheCapacity, metrics);
+    }
 
-                    if (character == '-' && nextIsDigit){ // checks that the next value is a digit - if so, its a negative value
-                        word.add(String.valueOf(character)); // for negative values, will not process '-' character as a subtraction
-                    } else {
+    private SRPN(SRPN parent, OutputSink output) {
+        this.output = Objects.requireNonNull(output, "output");
+        this.metrics = null;
+        this.userInput = parent.userInput.fork();
+        this.valueStack = parent.valueStack.fork();
+        this.randomSequence = parent.randomSequence.fork();
+        this.programCache = new ProgramCache(parent.programCache.capacity(), null);
+    }
 
-                        if (character == '+' && nextIsDigit){ // if there is a + sign prior to digit with no whitespace in between, treat as addition functionality
-                            String digit = String.valueOf(chars[i+1]); // processes the digit first
-                            userInput.add(digit);
-                            processStringItem(digit);
-                            i++; // now that digit has been processed, needs to be skipped in the loop
-                        }
-                        // THEN processes operator
-                        String operator = String.valueOf(character);
-                        userInput.add(operator);
-                        processStringItem(operator);
-                    }
-                }
-            } else {
-                String otherChar = String.valueOf(character); // any other char will be processed at the next stage
-                userInput.add(otherChar);
-                processStringItem(otherChar);
-            }
+    /**
+     * fork returns a new session in this session's state - the same stack, 'r' position and input history - that prints to output.
+        * It takes constant time and memory: the stack and history are shared copy-on-write, so neither session copies them until it changes them
+        * Once forked, the two sessions are independent, and may be used on different threads - fork itself must be called on this session's thread
+        * The fork starts with an empty ProgramCache of the same capacity, which allocates nothing until the fork runs a line and then grows
+          with the lines it sees - so a fork that runs a few lines does not pay for a full-size cache - and records no metrics
+     */
+    public SRPN fork(OutputSink output) {
+        return new SRPN(this, output);
+    }
+
+    /**
+     * processCommand is the initial caller method, and the main public method of this class.
+        * This is because all of the logic is designed to take place within the SRPN class, with only processCommand being called by main
+     * The idea of this method is to essentially hand the string s to the Lexer, which splits it into tokens exactly the way srpn does:
+        * A string of fewer than 2 characters is treated as a single item
+        * Otherwise the power-equal sign "^=" that exhibits odd behaviour is handled (see Lexer.handlePowerEqualsScenario for more), comments are removed, and the line is split up
+     * The tokens are compiled into a Program, which is cached by line text so that the same line is only ever lexed once, then run against the stack.
+     * s can be any CharSequence - such as a slice of a file - and is only copied into a String if its Program is added to the cache, the second time the line is seen.
+     * With metrics on, a line costs one count on its Program - its operators and the line itself are added into metrics later, from those counts.
+     * Fundamentally, the method is designed to identify the scope of the input before delegating the logic flow to other methods, therefore satisfying the modularisation principle of OOP.
+     */
+    public void processCommand(CharSequence s) throws IOException {
+        long start = metrics != null && metrics.isSampled(programCache.lookups()) ? startSample() : 0;
+        Program program = programCache.get(s);
+        if (program == null) {
+            program = compile(s);
+        } else if (metrics != null) {
+            program.runs++;
+        }
+        run(program);
+        if (start != 0) {
+            metrics.recordLatency(System.nanoTime() - start);
         }
     }
 
     /**
-     * processStringItem is the next component to advance the logic flow - this abstracts the many conditions surrounding specific character/string validation and processing
-        * 1: for any digit based value, it is pushed to the valueStack
-        * 2: for any operators when the stack has not reached 23 - the overflow amount - it calls the handleOperation method to handle the next phase
-        * 3: if s matches 'd', it emulates the srpn function of printing out every value present in the stack - unless it is empty, where it prints out the min integer value
-        * 4: if s matches 'r', it uses the stream API from java 8 onwards to locate how many counts of 'r' have been recorded in the user input and calculates its index position in randomSequence based on this
-        * 5: once s equals '=' it will check for an empty valueStack, otherwise it will print the last item in the stack - i.e. the most recent calculation or value
-        * 6: if none of these values are satisfied, the string is invalid and returns a logged message
-     *
+     * compile lexes and compiles a line that is not in the cache - into a Program of its own if the cache admits it, otherwise into scratch.
+        * This run of it is counted when metrics are on
      */
-    private void processStringItem(String s) throws IOException {
-        boolean hasReachedOverflow = valueStack.size() == 23; // maximum stack size is 23, so anything lower than this can be pushed
-        boolean isNumber = s.matches("-?\\d+") || s.matches("r");
-        if (hasReachedOverflow && isNumber){ // if stackoverflow is reached, srpn will print "Stack overflow."
-            System.out.println("Stack overflow.");
-        } else {
-            if (s.matches("-?\\d+")){
-                valueStack.push(Integer.parseInt(s));
-            } else if (isOperator(s) && !hasReachedOverflow){ // once an operator is reached, it will perform a calculation
-                handleOperation(s); // performs calculation upon an operator being reached in the input chain
-            } else if (s.matches("d")){
-                if (valueStack.empty()){
-                    System.out.println(Integer.MIN_VALUE); // Scenario where there are no values present, inputting d will print min value
-                }
-                valueStack.forEach(System.out::println); // handles an input of d which prints every value from the input thus far
-            } else if (s.matches("r")){
-                List<String> listOfRandoms = userInput.stream()
-                        .filter(string -> string.matches("r"))
-                        .toList(); // filters by inputs that match "r" and adds to a list
-                int index = listOfRandoms.size() == 1 ? 0 : listOfRandoms.size()-1; // if the random stack is empty, index set to 0, otherwise it is equal to the size of the stack
-                int value = (index < 22) ? randomSequence[index] : randomSequence[0]; // the value is determined by the index if the index val is under the overflow val, otherwise will return the first in the sequence
-                valueStack.push(value); // value pushed to stack
-            } else if (s.matches("=") && !hasReachedOverflow){
-                if (valueStack.empty()){
-                    System.out.println("Stack empty."); // if = sign and no values in the stack, prints "Stack empty."
-                } else {
-                    System.out.println(valueStack.peek()); // prints the last value as this is either the result or the latest value
-                }
-            } else {
-                System.out.println("Unrecognised operator or operand " + "\"" + s + "\"");
+    private Program compile(CharSequence s) {
+        if (tokens == null) {
+            tokens = new TokenBuffer();
+        }
+        lexer.tokenize(s, tokens);
+        boolean keepText = userInput.capacity() > 0;
+        if (programCache.admits(s)) {
+            Program program = Program.compile(tokens, keepText);
+            programCache.put(s, program);
+            if (metrics != null) {
+                program.runs = 1;
             }
+            return program;
+        }
+        scratch = scratch == null ? Program.compile(tokens, keepText) : scratch.recompile(tokens, keepText);
+        if (metrics != null) {
+            scratch.runs = 1;
+            metrics.recordRuns(scratch); // scratch is recompiled by the next line it takes, so this run is counted now
         }
+        return scratch;
     }
 
     /**
-     * This method is called when an operator has been reached, triggering a calculation.
-        * It checks first if there are equal to or more than 2 values in the stack - this needs to happen to perform calculation, otherwise prints "Stack underflow."
-        * If so and the result is zero, it prints Divide by 0 - see that method for more.
-        * Negative power scenario is reached when the last digit in the stack is negative and the power operator is being applied.
-        * If neither of these scenarios are met, the two values from the top of the stack are removed via pop(), and the result of performCalculation function is pushed to the value stack in their place
+     * startSample publishes the metrics, and returns the time a sampled line starts - kept out of processCommand, as only one line in many needs it.
      */
+    private long startSample() {
+        publishMetrics();
+        return System.nanoTime();
+    }
 
-    private void handleOperation(String operator) throws IOException {
-        if (valueStack.size() >= 2) { // at least 2 values must be present to perform calculation and the penultimate val must not be an operator
-            if (isResultZero(valueStack.get(valueStack.size()-2), valueStack.peek(), operator)){
-                System.out.println("Divide by 0.");
-            } else if (operator.equals("^") && valueStack.peek() < 0){ // handles situations where value b is a negative integer - should reproduce srpn "Negative power." response
-                System.out.println("Negative power.");
-            } else {
-                int valB = valueStack.pop(); // returns the object at the top of the stack, which is the second number in the equation
-                int valA = valueStack.pop(); // then returns value A, which is the first number in the equation
-                valueStack.push(performCalculation(valA, valB, operator)); // if neither of these negative cases are met, it will push the result performed by the calculation to the stack
-            }
-        } else {
-            System.out.println("Stack underflow."); // Any other scenario produces "Stack underflow."
+    /**
+     * flush writes out anything the output sink is still holding, and publishes the metrics - call it at the end of input.
+     */
+    public void flush() throws IOException {
+        publishMetrics();
+        output.flush();
+    }
+
+    /**
+     * publishMetrics counts the runs of every cached line into metrics, then publishes them - only this session's thread may call it.
+     */
+    void publishMetrics() {
+        if (metrics != null) {
+            programCache.recordRuns();
+            metrics.publish();
         }
     }
 
     /**
-     * buildAndFlushWord is utilised by processLine method to save the value to userInput list and then process the word, before clearing it for the next entry
+     * Returns the cache of compiled lines, so its hit, miss and eviction counts can be read.
+     */
+    public ProgramCache programCache() {
+        return programCache;
+    }
+
+    /**
+     * checkpoint captures this session's state - the stack, the 'r' position and the input history - after the given number of commands, see Checkpoint.
      */
-    private void buildAndFlushWord(List<String> word) throws IOException {
-        String val = stringBuilder(word);
-        userInput.add(val);
-        processStringItem(val);
-        word.clear();
+    Checkpoint checkpoint(long commands) {
+        return new Checkpoint(commands, valueStack.toArray(), randomSequence.position(), userInput.capacity(), userInput.toArray());
     }
 
     /**
-     * stringBuilder constructs a new string from every character added in processLine to form a new word (e.g. 1,1 will become 11)
+     * load puts the state of a checkpoint into this session, which must be new and have the checkpoint's history capacity - see Checkpoint.restore.
      */
-    private String stringBuilder(List<String> word) {
-        StringBuilder wordBuilder = new StringBuilder();
-        for (String s : word) {
-            wordBuilder.append(s);
+    void load(Checkpoint checkpoint) {
+        if (!valueStack.isEmpty() || randomSequence.position() != 0 || userInput.size() != 0) {
+            throw new IllegalStateException("A checkpoint can only be loaded into a new session");
+        }
+        for (int value : checkpoint.stack()) {
+            valueStack.push(value);
+        }
+        randomSequence.restore(checkpoint.randomPosition());
+        for (String token : checkpoint.history()) {
+            userInput.add(token);
         }
-        return wordBuilder.toString();
     }
 
     /**
-     * The power equals scenario handles the scenario where the ^= functionality in srpn returns the last value in the stack
-     * Called in the parent function processCommand - See line by line comment for breakdown
-     * This method matches the srpn functionality so that the trailing char behind ^= is printed if it is a digit, removes = so it doesn't print the value calculated after the ^ sign is applied to the valueStack values
+     * run is the next component to advance the logic flow - it executes each instruction of the program in turn:
+        * 0: the ^= quirk instructions come first - an echoed char is printed, and a read outside the line fails the way srpn does
+        * 1: for any number, it is pushed to the valueStack - unless the stack has reached 23, the overflow amount, where srpn prints "Stack overflow."
+        * 2: for any operators when the stack has not reached 23, it calls the handleOperation method to handle the next phase
+        * 3: for 'd', it emulates the srpn function of printing out every value present in the stack - unless it is empty, where it prints out the min integer value
+        * 4: for 'r', it pushes the value from randomSequence for however many counts of 'r' have been recorded so far
+        * 5: for '=' it will check for an empty valueStack, otherwise it will print the last item in the stack - i.e. the most recent calculation or value
+        * 6: if none of these values are satisfied, the token is invalid and returns a logged message - this includes an operator or '=' at overflow
      */
-    private String handlePowerEqualsScenario(String s){
-        char[] chars = s.toCharArray(); // first, converts the whole line to a char array so it can be iterated through
-
-        for (int i = chars.length-1; i > 0; i--) { // iteration begins at the end of the array first, as = is typically found at the end of an input
-            if (chars[i] == '=' && chars[i-1] == '^') { // if the current index is = and the character before that is "^", loop advances
-                char trailingChar = chars[i-2]; // now selects the character 2 spaces earlier than the current
-                if (Character.isDigit(trailingChar)){ // checks if it is a digit
-                    s = s.replace("=", ""); // if so, replaces = with a whitespace so it isn't processed
-                    System.out.println(chars[trailingChar]); // prints out the digit behind ^=
-                } else if (Character.isWhitespace(trailingChar) && Character.isDigit(chars[i-3])){ // if it is a whitespace before the ^= sign, it checks if the char behind that is a digit or not
-                    s = s.replace("=", "");
-                    System.out.println(chars[i-3]);// if so, prints that char and removes = from the sequence
+    private void run(Program program) throws IOException {
+        int[] code = program.code;
+        int end = program.length() * 2;
+        int pc = 0;
+        try {
+            for (; pc < end; pc += 2) {
+                int opcode = code[pc];
+                int operand = code[pc + 1];
+                String text = program.texts[pc >> 1];
+                if (opcode == Program.ECHO) {
+                    output.echo((char) operand);
+                    continue;
+                } else if (opcode == Program.FAULT) {
+                    throw new ArrayIndexOutOfBoundsException(text);
+                }
+                record(opcode, text);
+
+                boolean hasReachedOverflow = valueStack.isFull(); // maximum stack size is 23, so anything lower than this can be pushed
+                boolean isNumber = opcode == Program.PUSH_LITERAL || opcode == Program.PARSE_ERROR || opcode == Program.PUSH_RANDOM;
+                if (hasReachedOverflow && isNumber){ // if stackoverflow is reached, srpn will print "Stack overflow."
+                    report(Diagnostic.STACK_OVERFLOW);
+                } else if (opcode == Program.PUSH_LITERAL){
+                    valueStack.push(operand);
+                } else if (opcode == Program.PARSE_ERROR){
+                    valueStack.push(Integer.parseInt(text)); // srpn cannot parse numbers outside the int range, so this throws a NumberFormatException
+                } else if (opcode == Program.OPERATOR && !hasReachedOverflow){ // once an operator is reached, it will perform a calculation
+                    handleOperation(Operator.fromCode(operand)); // performs calculation upon an operator being reached in the input chain
+                } else if (opcode == Program.DUMP){
+                    if (valueStack.isEmpty()){
+                        output.value(Integer.MIN_VALUE); // Scenario where there are no values present, inputting d will print min value
+                    }
+                    for (int i = 0; i < valueStack.size(); i++) { // handles an input of d which prints every value from the input thus far, bottom first
+                        output.value(valueStack.get(i));
+                    }
+                } else if (opcode == Program.PUSH_RANDOM){
+                    valueStack.push(randomSequence.current()); // the value is determined by how many 'r' tokens have been recorded, see RandomSequence
+                } else if (opcode == Program.PRINT_TOP && !hasReachedOverflow){
+                    if (valueStack.isEmpty()){
+                        report(Diagnostic.STACK_EMPTY); // if = sign and no values in the stack, prints "Stack empty."
+                    } else {
+                        output.value(valueStack.peek()); // prints the last value as this is either the result or the latest value
+                    }
+                } else {
+                    if (metrics != null) {
+                        metrics.recordUnrecognised();
+                        if (opcode == Program.OPERATOR) {
+                            metrics.recordUnrunOperator(operand); // an operator at overflow is only reported, it does not run
+                        }
+                    }
+                    output.unrecognised(unrecognisedText(opcode, operand, text));
                 }
             }
+        } catch (RuntimeException | IOException e) {
+            if (metrics != null) {
+                metrics.recordUnrunOperators(code, pc + 2, end); // the line ends here, so the operators after this instruction never run
+            }
+            throw e;
         }
-        return s;
     }
 
     /**
-     * isOperator returns a boolean value based on the current user input via iterations
-        * Encapsulating the logic in a separate method: allows the details of the validation to be separated from its caller method, also resulting in better readability
+     * Returns the token an "Unrecognised operator or operand" message is about - an operator or '=' at overflow only has its char.
+        * Every result is a String that already exists, so reporting a token does not allocate
      */
-    private boolean isOperator(String input){
-        boolean isOperator = false;
-        for (String string : operators) {
-            if (string.equals(input)){
-                isOperator = true;
-                break;
-            }
+    private String unrecognisedText(int opcode, int operand, String text) {
+        if (opcode == Program.OPERATOR) {
+            return Operator.fromCode(operand).text();
         }
-        return isOperator;
+        return opcode == Program.PRINT_TOP ? "=" : text;
     }
 
     /**
-     * Handles cases in which either value is 0 and the operator is division
+     * This method is called when an operator has been reached, triggering a calculation.
+        * It checks first if there are equal to or more than 2 values in the stack - this needs to happen to perform calculation, otherwise prints "Stack underflow."
+        * If so and the result is zero, it prints Divide by 0 - see that method for more.
+        * Negative power scenario is reached when the last digit in the stack is negative and the power operator is being applied.
+        * If neither of these scenarios are met, the two values from the top of the stack are removed via pop(), and the result of the Operator (see Operator.apply) is pushed to the value stack in their place
      */
-    private boolean isResultZero(int valueA, int valueB, String operator){
-        return (valueA == 0 || valueB == 0) && operator.equals("/");
+
+    private void handleOperation(Operator operator) throws IOException {
+        if (valueStack.size() >= 2) { // at least 2 values must be present to perform calculation and the penultimate val must not be an operator
+            int valB = valueStack.peek(); // the value at the top of the stack is the second number in the equation
+            int valA = valueStack.get(valueStack.size()-2); // the value beneath it is the first number in the equation
+            if (isResultZero(valA, valB, operator)){
+                report(Diagnostic.DIVIDE_BY_ZERO);
+            } else if (operator == Operator.POWER && valB < 0){ // handles situations where value b is a negative integer - should reproduce srpn "Negative power." response
+                report(Diagnostic.NEGATIVE_POWER);
+            } else {
+                valueStack.pop(); // both values are removed from the stack, as they have already been read above
+                valueStack.pop();
+                valueStack.push(operator.apply(valA, valB)); // if neither of these negative cases are met, it will push the result performed by the calculation to the stack
+            }
+        } else {
+            report(Diagnostic.STACK_UNDERFLOW); // Any other scenario produces "Stack underflow."
+        }
     }
 
     /**
-     * performCalculation is the method that handles mathematical operations within the program, using a variety of validations to achieve the correct result.
-        * There are 4 boolean values:
-            * isMax - determines whether either value is equal to the maximum integer value - true if so, false if not.
-            * isMin - same as isMax but for minimum integer value - true if so, false if not.
-            * exceedsMaxValue - determines whether the result of the calculation will exceed the max value before the calculation is actually performed.
-            * exceedsMinValue - similarly to exceedsMaxValue, checks the result against the minimum integer value for specific operators only.
-                * Abstracting this logic into separate methods helps keep the logic readable and clean.
-        * This method also utilises a switch implementation as opposed to using "if-else" statements, which contributes to greater readability whilst providing similar functionality in this case.
-        * Use of ternary operators in the return cases instead of using the verbose "if-else" approach to switch implementation.
-     * @param valueA - the first integer in the equation
-     * @param valueB - the second integer in the equation
-     * @param operator - the mathematical operation to be performed on the two integers
-     * @return the result of the calculation
+     * record saves a token to the userInput history before it is processed.
+        * The token text is only kept by the Program when there is a history to keep it in
+        * Every 'r' is counted here rather than when it is pushed, so an 'r' rejected with "Stack overflow." still moves the sequence on, as in srpn
      */
-    private int performCalculation(int valueA, int valueB, String operator) {
-        boolean isMax = Integer.MAX_VALUE == valueA || Integer.MAX_VALUE == valueB;
-        boolean isMin = Integer.MIN_VALUE == valueA || Integer.MIN_VALUE == valueB;
-        boolean exceedsMax = exceedsMaxValue(valueA, valueB, operator);
-        boolean exceedsMin = exceedsMinValue(valueA, valueB, operator);
-            return switch (operator) {
-                case "%" -> !isMax && !isMin ? valueA % valueB  // if not max or min values, return the remainder of the operation
-                                : isMax ? Integer.MAX_VALUE : Integer.MIN_VALUE; // if not, return max value if one val = max val, or return min value otherwise
-                case "*" ->  !exceedsMax && !exceedsMin ? valueA * valueB // if the result of the calculation exceeds neither max or min values, return a * b
-                                : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE; // in the case either value exceeds max val / result of both exeeds it, return max value, otherwise return min value
-                case "/" -> !exceedsMax ? valueA / valueB : isMax ? Integer.MAX_VALUE : 0; // min value not possible to be exceeded, so unless it exceeds max value, returns a / b, or 0.
-                case "-" -> !exceedsMax && !exceedsMin ? valueA - valueB // returns result of a - b if neither max or min value are exceeded
-                                : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE; // otherwise, if either val / their result exceeds max, return max int, otherwise return min int val
-                case "^" -> !exceedsMax && !exceedsMin ? (int) Math.pow(valueA, valueB) // uses inbuilt Math.pow() function to calculate a ^ b - cast to an int
-                                : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-                default -> !exceedsMax && !exceedsMin // default value is set to addition, as this is the last remaining case - can't be any other operator because it has already been validated against operator array of vals
-                                ? valueA + valueB : (isMax || exceedsMax) ? Integer.MAX_VALUE : Integer.MIN_VALUE; // primary scenario returns a + b if validated
-            };
+    private void record(int opcode, String text) {
+        if (userInput.capacity() > 0) {
+            userInput.add(text);
+        }
+        if (opcode == Program.PUSH_RANDOM) {
+            randomSequence.advance();
+        }
     }
 
     /**
-     * Function designed to take two integers and an operator and return true or false based on whether the result of the calculation exceeds the minimum integer value.
-        * Only takes into account subtraction, addition and multiplication.
-        * Values must be cast to long as the result must be compared to the min value of an integer (-2^31), so must be able to pass this threshold to validate the boolean condition.
-        * Dividing two numbers can never reach below min val, neither can modulus, so these are excluded.
+     * Handles cases in which either value is 0 and the operator is division
      */
-    private boolean exceedsMinValue(int valA, int valB, String operator){
-        return switch (operator) {
-            case "*" -> (long) valA * (long) valB < Integer.MIN_VALUE;
-            case "+" -> (long) valA + (long) valB < Integer.MIN_VALUE;
-            case "-" -> (long) valA - (long) valB < Integer.MIN_VALUE;
-            case "^" -> (long) Math.pow(valA, valB) < Integer.MIN_VALUE; // Utilise the pow() function to process the result
-            default -> false;
-        };
+    private boolean isResultZero(int valueA, int valueB, Operator operator){
+        return (valueA == 0 || valueB == 0) && operator == Operator.DIVIDE;
     }
 
     /**
-     * Similar to exceedsMinValue, returns true or false based on whether the result of the calculation exceeds Max integer value.
-     * Logic is extracted away from performCalculation to enhance modularisation and delegation of logic flow .
-     * Modulus is excluded as two numbers applied against the modulus operator can never reach max val
+     * report prints a diagnostic, counting it first when metrics are on
      */
-
-    private boolean exceedsMaxValue(int valA, int valB, String operator) {
-        // casting each value to long so that the calculation can occur
-        return switch (operator) {
-            case "*" -> (long) valA * (long) valB > Integer.MAX_VALUE;
-            case "/" -> (long) valA / (long) valB > Integer.MAX_VALUE; // dividing two numbers can reach above max val in one case - Min val / -1
-            case "+" -> (long) valA + (long) valB > Integer.MAX_VALUE;
-            case "-" -> (long) valA - (long) valB > Integer.MAX_VALUE;
-            case "^" -> (long) Math.pow(valA, valB) > Integer.MAX_VALUE;
-            default -> false;
-        };
+    private void report(Diagnostic diagnostic) throws IOException {
+        if (metrics != null) {
+            metrics.recordDiagnostic(diagnostic);
+        }
+        output.diagnostic(diagnostic);
     }
 }
@@ -0,0 +1,56 @@
+package org.example;
+
+/**
+ * SrpnMetricsMXBean is the JMX view of a MetricsMonitor - the totals of every session it watches.
+    * Latencies are in nanoseconds, from the sampled lines only (see Metrics)
+    * The operator counts (additions to powers) are of operators that ran, whatever the outcome - see Metrics.operations
+ */
+public interface SrpnMetricsMXBean {
+
+    long getLines();
+
+    int getSessions();
+
+    long getAdditions();
+
+    long getSubtractions();
+
+    long getMultiplications();
+
+    long getDivisions();
+
+    long getModulos();
+
+    long getPowers();
+
+    long getStackOverflows();
+
+    long getStackUnderflows();
+
+    long getStackEmpty();
+
+    long getDivideByZeros();
+
+    long getNegativePowers();
+
+    long getUnrecognisedTokens();
+
+    int getStackHighWater();
+
+    long getLatencySamples();
+
+    long getLatencyP50Nanos();
+
+    long getLatencyP90Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyP999Nanos();
+
+    long getLatencyMaxNanos();
+
+    /**
+     * Returns every metric as text, in the form of the periodic dump.
+     */
+    String dump();
+}
@@ -0,0 +1,307 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SrpnServer serves many SRPN sessions from one JVM, over a local TCP port or a Unix-domain socket.
+    * Each connection gets its own SRPN session, so sessions never see each other's stack - it is exactly as if each user ran Main
+    * The protocol is the same as the command line: UTF-8 lines in, srpn's output lines back
+        * Output is written back once all complete lines received so far have been processed, so pipelined commands are answered in batches
+    * Sessions run on virtual threads when the JVM has them (Java 21+), otherwise on platform threads with small stacks
+ * Limits:
+    * maxSessions - once reached, no more connections are accepted until a session ends; new clients wait in the listen backlog
+    * idleTimeout - a session that has not received anything for this long is closed
+    * Backpressure - a session blocks writing its output until the client reads it, and only then reads more input,
+      so a client that stops reading is slowed down by TCP flow control rather than buffered for in memory
+    * A line longer than MAX_LINE_LENGTH chars closes the session
+ * Given a MetricsMonitor, every session records into its own Metrics, which is retired into the monitor's totals when the session ends.
+ * If the calculator itself fails - e.g. on a number outside the int range, which ends the command line program - only that session is closed.
+ */
+public final class SrpnServer implements Closeable {
+
+    public static final int DEFAULT_MAX_SESSIONS = 10_000;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    static final int MAX_LINE_LENGTH = 1 << 16;
+    static final int SESSION_BUFFER_SIZE = 4096; // per session, for both input and output
+    static final int SESSION_CACHE_CAPACITY = 64; // compiled lines per session - kept small as there may be thousands of sessions
+    private static final int BACKLOG = 1024;
+
+    private final SocketAddress address;
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+    private final Semaphore permits;
+    private final MetricsMonitor monitor;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sessionsOpened = new AtomicLong();
+    private ServerSocketChannel server;
+    private ExecutorService executor;
+    private ScheduledExecutorService watchdog;
+    private Thread acceptor;
+    private boolean virtualThreads;
+    private volatile boolean running;
+
+    public SrpnServer(SocketAddress address) {
+        this(address, DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public SrpnServer(SocketAddress address, int maxSessions, Duration idleTimeout) {
+        this(address, maxSessions, idleTimeout, null);
+    }
+
+    /**
+     * Creates a server whose sessions record metrics into monitor - or none, if it is null.
+     */
+    public SrpnServer(SocketAddress address, int maxSessions, Duration idleTimeout, MetricsMonitor monitor) {
+        if (!(address instanceof InetSocketAddress) && !(address instanceof UnixDomainSocketAddress)) {
+            throw new IllegalArgumentException("Address must be an InetSocketAddress or UnixDomainSocketAddress: " + address);
+        }
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be at least 1: " + maxSessions);
+        }
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("idleTimeout must be positive: " + idleTimeout);
+        }
+        this.address = address;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.permits = new Semaphore(maxSessions);
+        this.monitor = monitor;
+    }
+
+    /**
+     * start binds the socket and starts accepting connections, returning the address bound (with the real port if port 0 was asked for).
+     */
+    public synchronized SocketAddress start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        server = address instanceof UnixDomainSocketAddress ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        server.bind(address, BACKLOG);
+        executor = newSessionExecutor();
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "srpn-idle-watchdog", 0));
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), Math.min(TimeUnit.SECONDS.toNanos(1), idleTimeoutNanos / 4));
+        watchdog.scheduleAtFixedRate(this::closeIdleSessions, period, period, TimeUnit.NANOSECONDS);
+        running = true;
+        acceptor = new Thread(this::acceptConnections, "srpn-acceptor");
+        acceptor.start();
+        return server.getLocalAddress();
+    }
+
+    /**
+     * awaitTermination blocks until the server is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = acceptor;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * close stops accepting connections and closes every open session.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (server == null || !running) {
+            return;
+        }
+        running = false;
+        acceptor.interrupt();
+        server.close();
+        watchdog.shutdownNow();
+        for (Session session : sessions) {
+            session.close();
+        }
+        executor.shutdown();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+        }
+    }
+
+    public int maxSessions() {
+        return maxSessions;
+    }
+
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    public long sessionsOpened() {
+        return sessionsOpened.get();
+    }
+
+    /**
+     * Returns true if sessions run on virtual threads - false on JVMs older than Java 21.
+     */
+    public synchronized boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * acceptConnections takes a session permit before each accept, so at maxSessions the server simply stops accepting.
+     */
+    private void acceptConnections() {
+        while (running) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                permits.release();
+                if (!running) {
+                    return;
+                }
+                System.err.println("Accept failed: " + e.getMessage());
+                continue;
+            }
+            Session session = new Session(channel);
+            sessions.add(session);
+            sessionsOpened.incrementAndGet();
+            try {
+                executor.execute(session);
+            } catch (RejectedExecutionException e) { // the server is closing
+                session.end();
+            }
+        }
+    }
+
+    private void closeIdleSessions() {
+        long now = System.nanoTime();
+        for (Session session : sessions) {
+            if (now - session.lastActive > idleTimeoutNanos) {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * newSessionExecutor runs each session on a virtual thread when the JVM supports them.
+        * It is looked up reflectively, as this code is built for Java 17 - where a cached pool of small-stack daemon threads is used instead
+     */
+    private ExecutorService newSessionExecutor() {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtualThreads = true;
+            return virtual;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) { // before Java 21, or 19/20 without --enable-preview
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> daemon(runnable, "srpn-session-" + count.incrementAndGet(), 256 * 1024));
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name, long stackSize) {
+        Thread thread = new Thread(null, runnable, name, stackSize);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Session is one connection and the SRPN session that belongs to it.
+     */
+    private final class Session implements Runnable {
+
+        private final SocketChannel channel;
+        private final SRPN srpn;
+        private final Metrics metrics;
+        private final LineDecoder lines = new LineDecoder(StandardCharsets.UTF_8, 256, MAX_LINE_LENGTH);
+        private final LineDecoder.LineHandler handler;
+        private volatile long lastActive = System.nanoTime();
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+            this.metrics = monitor != null ? monitor.newMetrics() : null;
+            this.srpn = new SRPN(new BufferedSink(Channels.newOutputStream(channel), StandardCharsets.UTF_8, SESSION_BUFFER_SIZE),
+                    0, SESSION_CACHE_CAPACITY, metrics);
+            this.handler = srpn::processCommand;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ByteBuffer bytes = ByteBuffer.allocate(SESSION_BUFFER_SIZE);
+                while (channel.read(bytes) >= 0) {
+                    lastActive = System.nanoTime();
+                    bytes.flip();
+                    lines.decode(bytes, false, handler);
+                    bytes.compact();
+                    srpn.flush(); // answers everything received so far - and blocks until the client takes it
+                }
+                bytes.flip();
+                lines.decode(bytes, true, handler);
+                lines.finish(handler);
+                srpn.flush();
+            } catch (IOException e) {
+                // the client went away, the session was idle for too long, or the server is closing
+            } catch (RuntimeException e) { // the calculator failed as the command line program would - only this session ends
+                try {
+                    srpn.flush();
+                } catch (IOException ignored) {
+                    // the client has gone already
+                }
+            } finally {
+                end();
+            }
+        }
+
+        void end() {
+            close();
+            if (sessions.remove(this)) {
+                if (metrics != null) {
+                    srpn.publishMetrics(); // on the session's own thread - or before it ever ran, if the executor rejected it
+                    monitor.retire(metrics);
+                }
+                permits.release();
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+
+    /**
+     * parseAddress reads a command line address: a port number means that port on the loopback interface, anything else is a Unix-domain socket path.
+     */
+    static SocketAddress parseAddress(String address) {
+        if (!address.isEmpty() && address.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        }
+        return UnixDomainSocketAddress.of(Path.of(address));
+    }
+}
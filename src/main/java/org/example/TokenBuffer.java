@@ -0,0 +1,93 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * TokenBuffer holds the tokens Lexer produces for one line of input, as primitive codes rather than Strings.
+    * Each token has a kind (one of the constants below), an int value and a range of characters in a shared char buffer - its text
+    * The text is only turned into a String when it is actually needed, e.g. for an "Unrecognised operator or operand" message
+    * The arrays grow as needed and are reused by clear(), so a long-lived buffer stops allocating once it has seen its longest line
+ */
+final class TokenBuffer {
+
+    /** An integer literal in the int range - value holds the integer. */
+    static final int LITERAL = 0;
+    /** An integer literal outside the int range - srpn fails to parse these, so the text is kept for the NumberFormatException. */
+    static final int LITERAL_OUT_OF_RANGE = 1;
+    /** 'r' - pushes the next value from the random sequence. */
+    static final int RANDOM = 2;
+    /** One of % - / + * ^ - value holds the operator char. */
+    static final int OPERATOR = 3;
+    /** 'd' - prints every value in the stack. */
+    static final int DUMP = 4;
+    /** '=' - prints the value at the top of the stack. */
+    static final int EQUALS = 5;
+    /** Anything else - reported as "Unrecognised operator or operand". */
+    static final int UNRECOGNISED = 6;
+    /** The char srpn echoes for the ^= quirk - value holds the char. Not an input token, so it is never recorded. */
+    static final int ECHO = 7;
+    /** The ^= quirk reading outside the line - value holds the index and the text is the whole line. Not recorded either. */
+    static final int FAULT = 8;
+
+    private int[] kinds = new int[16];
+    private int[] values = new int[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private int count;
+
+    private char[] text = new char[64];
+
+    void clear() {
+        count = 0;
+    }
+
+    void add(int kind, int value, int start, int length) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        kinds[count] = kind;
+        values[count] = value;
+        starts[count] = start;
+        lengths[count] = length;
+        count++;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int kind(int token) {
+        return kinds[token];
+    }
+
+    int value(int token) {
+        return values[token];
+    }
+
+    int textLength(int token) {
+        return lengths[token];
+    }
+
+    /**
+     * Creates a String of the token's text - the only place a token becomes a String.
+     */
+    String text(int token) {
+        return new String(text, starts[token], lengths[token]);
+    }
+
+    /**
+     * Returns the shared char buffer, making sure it can hold at least the given number of chars.
+        * Lexer writes the line, its comment-free copy and any number words straight into this buffer after clear().
+        * Any text already in the buffer is not kept when it has to grow.
+     */
+    char[] textBuffer(int capacity) {
+        if (text.length < capacity) {
+            text = new char[Math.max(capacity, text.length * 2)];
+        }
+        return text;
+    }
+}